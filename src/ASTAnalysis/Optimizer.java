@@ -0,0 +1,529 @@
+package ASTAnalysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import LexicalAnalysis.*;
+import Parsing.*;
+import Parsing.Expr.*;
+import Parsing.Expr.Set;
+import Parsing.Stmt.*;
+import Runtime.*;
+
+// Simplifies a resolved AST before it runs: operators on literals are folded, top-level `let!` constants with a literal
+// value are read as that literal, and branches and loops that can't do anything are dropped. Only the nodes that change
+// are rebuilt, and they keep the slots and scopes the resolver gave the originals.
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // How often each global name is declared. A constant declared more than once could have either value at runtime.
+    private final Map<String, Integer> declarations = new HashMap<>();
+    private final Map<String, Object> constants = new HashMap<>();
+
+    public List<Stmt> optimize(final List<Stmt> statements) {
+        for (final Stmt statement : statements) {
+            countDeclarations(statement);
+        }
+
+        // Constants are only known from their declaration on, so code that runs before it still looks them up.
+        final List<Stmt> optimized = new ArrayList<>();
+        for (final Stmt statement : statements) {
+            final Stmt result = optimize(statement);
+            if (result == null) {
+                continue;
+            }
+
+            optimized.add(result);
+            if (result instanceof final Let let && (let.mod == Modifier.Constant || let.mod == Modifier.Both)
+                    && let.init instanceof final Literal literal && declarations.get(let.name.lexeme) == 1) {
+                constants.put(let.name.lexeme, literal.value);
+            }
+        }
+        return optimized;
+    }
+
+    // Branches of an `if` or `match` that aren't blocks declare into the enclosing scope, here the globals.
+    private void countDeclarations(final Stmt statement) {
+        if (statement instanceof final Let let) {
+            declarations.merge(let.name.lexeme, 1, Integer::sum);
+        } else if (statement instanceof final FunctionStmt function) {
+            declarations.merge(function.name.lexeme, 1, Integer::sum);
+        } else if (statement instanceof final Struct struct) {
+            declarations.merge(struct.name.lexeme, 1, Integer::sum);
+        } else if (statement instanceof final InterfaceStmt anInterface) {
+            declarations.merge(anInterface.name.lexeme, 1, Integer::sum);
+        } else if (statement instanceof final If ifStmt) {
+            countDeclarations(ifStmt.thenBranch);
+            if (ifStmt.elseBranch != null) {
+                countDeclarations(ifStmt.elseBranch);
+            }
+        } else if (statement instanceof final Match match) {
+            for (final Case possibility : match.possibilities) {
+                countDeclarations(possibility.toRun);
+            }
+            if (match.ifAllElseFails != null) {
+                countDeclarations(match.ifAllElseFails);
+            }
+        }
+    }
+
+    // Null when the statement does nothing and can be left out.
+    private Stmt optimize(final Stmt statement) {
+        return statement.accept(this);
+    }
+
+    private Expr optimize(final Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Returns `statements` itself when nothing in it changed.
+    private List<Stmt> optimizeBody(final List<Stmt> statements) {
+        final List<Stmt> optimized = new ArrayList<>();
+        boolean changed = false;
+        for (int i = 0; i < statements.size(); ++i) {
+            final Stmt statement = statements.get(i);
+            final Stmt result = optimize(statement);
+            if (result != null && !isEmpty(result)) {
+                optimized.add(result);
+            }
+            changed |= result != statement || (result != null && isEmpty(result));
+
+            // Nothing after a return in the same block can run.
+            if (result instanceof ReturnStmt) {
+                changed |= i != statements.size() - 1;
+                break;
+            }
+        }
+        return changed ? optimized : statements;
+    }
+
+    private List<Expr> optimizeAll(final List<Expr> exprs) {
+        final List<Expr> optimized = new ArrayList<>();
+        boolean changed = false;
+        for (final Expr expr : exprs) {
+            final Expr result = optimize(expr);
+            changed |= result != expr;
+            optimized.add(result);
+        }
+        return changed ? optimized : exprs;
+    }
+
+    // A branch or loop body that was optimized away still needs a statement in its place.
+    private static Stmt orEmpty(final Stmt statement) {
+        if (statement != null) {
+            return statement;
+        }
+
+        final Block empty = new Block(new ArrayList<>());
+        empty.scope = null;
+        return empty;
+    }
+
+    private static boolean isEmpty(final Stmt statement) {
+        return statement instanceof final Block block && block.statements.isEmpty();
+    }
+
+    private interface Fold {
+        Object value();
+    }
+
+    // Null when the operation fails: it's left for the runtime to report.
+    private static Literal fold(final Fold fold) {
+        try {
+            return new Literal(Rope.flatten(fold.value()));
+        } catch (final RuntimeError ignore) {
+            return null;
+        }
+    }
+
+    @Override
+    public Expr visitAssignExpr(Assign expr) {
+        final Expr value = optimize(expr.value);
+        if (value == expr.value) {
+            return expr;
+        }
+
+        final Assign assign = new Assign(expr.name, value);
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Binary expr) {
+        final Expr left = optimize(expr.left);
+        // The right of a type test is read as a name, not a value.
+        final boolean typeTest = expr.operator.type == TokenType.Derives || expr.operator.type == TokenType.Implements;
+        final Expr right = typeTest ? expr.right : optimize(expr.right);
+
+        if (!typeTest && left instanceof final Literal l && right instanceof final Literal r) {
+            final Literal folded = fold(() -> Operators.binary(expr.operator, l.value, r.value));
+            if (folded != null) {
+                return folded;
+            }
+        }
+
+        return (left == expr.left && right == expr.right) ? expr : new Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Call expr) {
+        final Expr callee = optimize(expr.callee);
+        final List<Expr> arguments = optimizeAll(expr.arguments);
+        if (callee == expr.callee && arguments == expr.arguments) {
+            return expr;
+        }
+
+        final Call call = new Call(callee, expr.paren, arguments);
+        call.tailCall = expr.tailCall;
+        return call;
+    }
+
+    @Override
+    public Expr visitGetExpr(Get expr) {
+        final Expr obj = optimize(expr.obj);
+        return (obj == expr.obj) ? expr : new Get(obj, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Grouping expr) {
+        final Expr expression = optimize(expr.expression);
+        if (expression instanceof Literal) {
+            return expression;
+        }
+        return (expression == expr.expression) ? expr : new Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Literal expr) {
+        return expr;
+    }
+
+    // Both sides are always evaluated, so only two literals can be folded.
+    @Override
+    public Expr visitLogicalExpr(Logical expr) {
+        final Expr left = optimize(expr.left);
+        final Expr right = optimize(expr.right);
+
+        if (left instanceof final Literal l && right instanceof final Literal r) {
+            final boolean a = Operators.isTruthy(l.value), b = Operators.isTruthy(r.value);
+            return new Literal((expr.operator.type == TokenType.Or) ? (a || b) : (a && b));
+        }
+
+        return (left == expr.left && right == expr.right) ? expr : new Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Set expr) {
+        final Expr obj = optimize(expr.obj);
+        final Expr value = optimize(expr.value);
+        return (obj == expr.obj && value == expr.value) ? expr : new Set(obj, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSelfExpr(Self expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Unary expr) {
+        final Expr right = optimize(expr.right);
+
+        if (right instanceof final Literal r) {
+            final Literal folded = fold(() -> Operators.unary(expr.operator, r.value));
+            if (folded != null) {
+                return folded;
+            }
+        }
+
+        return (right == expr.right) ? expr : new Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariable(Variable expr) {
+        if (expr.depth == -1 && constants.containsKey(expr.name.lexeme)) {
+            return new Literal(constants.get(expr.name.lexeme));
+        }
+        return expr;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Block stmt) {
+        final List<Stmt> statements = optimizeBody(stmt.statements);
+        if (statements == stmt.statements) {
+            return stmt;
+        }
+
+        final Block block = new Block(statements);
+        block.scope = stmt.scope;
+        block.reuseFrame = stmt.reuseFrame;
+        return block;
+    }
+
+    @Override
+    public Stmt visitStructStmt(Struct stmt) {
+        final List<FunctionStmt> methods = new ArrayList<>();
+        boolean changed = false;
+        for (final FunctionStmt method : stmt.methods) {
+            final FunctionStmt optimized = (FunctionStmt) optimize(method);
+            changed |= optimized != method;
+            methods.add(optimized);
+        }
+        if (!changed) {
+            return stmt;
+        }
+
+        final Struct struct = new Struct(stmt.name, stmt.superStruct, methods, stmt.isStatic, stmt.status);
+        struct.slot = stmt.slot;
+        return struct;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Expression stmt) {
+        final Expr expression = optimize(stmt.expression);
+        if (expression instanceof Literal) {
+            return null;
+        }
+        return (expression == stmt.expression) ? stmt : new Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(FunctionStmt stmt) {
+        final List<Stmt> body = optimizeBody(stmt.body);
+        if (body == stmt.body) {
+            return stmt;
+        }
+
+        final FunctionStmt function = new FunctionStmt(stmt.name, stmt.params, body, stmt.isStatic);
+        function.slot = stmt.slot;
+        function.scope = stmt.scope;
+        function.selfSlot = stmt.selfSlot;
+        return function;
+    }
+
+    @Override
+    public Stmt visitIfStmt(If stmt) {
+        final Expr condition = optimize(stmt.condition);
+        final Stmt thenBranch = optimize(stmt.thenBranch);
+        final Stmt elseBranch = (stmt.elseBranch != null) ? optimize(stmt.elseBranch) : null;
+
+        if (condition instanceof final Literal literal) {
+            return Operators.isTruthy(literal.value) ? thenBranch : elseBranch;
+        }
+
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return new If(condition, orEmpty(thenBranch), elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Print stmt) {
+        final Expr expression = optimize(stmt.expression);
+        return (expression == stmt.expression) ? stmt : new Print(expression, stmt.newLine);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(ReturnStmt stmt) {
+        if (stmt.value == null) {
+            return stmt;
+        }
+
+        final Expr value = optimize(stmt.value);
+        return (value == stmt.value) ? stmt : new ReturnStmt(stmt.keyword, value);
+    }
+
+    @Override
+    public Stmt visitLetStmt(Let stmt) {
+        if (stmt.init == null) {
+            return stmt;
+        }
+
+        final Expr init = optimize(stmt.init);
+        if (init == stmt.init) {
+            return stmt;
+        }
+
+        final Let let = new Let(stmt.keyword, stmt.mod, stmt.name, init);
+        let.slot = stmt.slot;
+        return let;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(While stmt) {
+        final Expr condition = optimize(stmt.condition);
+        if (condition instanceof final Literal literal && !Operators.isTruthy(literal.value)) {
+            return null;
+        }
+
+        final Stmt body = optimize(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) {
+            return stmt;
+        }
+
+        final While loop = new While(condition, orEmpty(body));
+        loop.scope = stmt.scope;
+        return loop;
+    }
+
+    @Override
+    public Stmt visitForStmt(For stmt) {
+        final Stmt init = (stmt.init != null) ? optimize(stmt.init) : null;
+        final Expr condition = (stmt.condition != null) ? optimize(stmt.condition) : null;
+        final Stmt inc = (stmt.inc != null) ? optimize(stmt.inc) : null;
+        final Stmt body = optimize(stmt.body);
+
+        if (condition instanceof final Literal literal && !Operators.isTruthy(literal.value)) {
+            // Only the initializer runs. Without a scope of its own it can stand in for the loop.
+            if (init == null || (init instanceof final Let let && (let.init == null || let.init instanceof Literal))) {
+                return null;
+            } else if (init instanceof Expression && stmt.scope == null) {
+                return init;
+            }
+        } else if ((body == null || isEmpty(body)) && countsOut(init, condition, inc)) {
+            return null;
+        }
+
+        if (init == stmt.init && condition == stmt.condition && inc == stmt.inc && body == stmt.body) {
+            return stmt;
+        }
+
+        final For loop = new For(init, condition, (Expression) inc, orEmpty(body));
+        loop.scope = stmt.scope;
+        return loop;
+    }
+
+    // Whether a loop is `for (let i = a; i < b; i = i + c)` (or counting down) on number literals and always stops. With
+    // nothing in its body, such a loop has no effect at all.
+    private static boolean countsOut(final Stmt init, final Expr condition, final Stmt inc) {
+        if (!(init instanceof final Let let && let.init instanceof final Literal from && Operators.isNumber(from.value))
+                || !(condition instanceof final Binary test && isCounter(test.left, let)
+                    && test.right instanceof final Literal to && Operators.isNumber(to.value))
+                || !(inc instanceof final Expression expression && expression.expression instanceof final Assign assign
+                    && assign.depth == 0 && assign.slot == let.slot
+                    && assign.value instanceof final Binary step && isCounter(step.left, let)
+                    && step.right instanceof final Literal by && Operators.isNumber(by.value))) {
+            return false;
+        }
+
+        final boolean up;
+        switch (test.operator.type) {
+            case Less, LessEqual -> up = true;
+            case Greater, GreaterEqual -> up = false;
+            default -> {
+                return false;
+            }
+        }
+
+        final boolean inclusive = test.operator.type == TokenType.LessEqual || test.operator.type == TokenType.GreaterEqual;
+        return switch (step.operator.type) {
+            case Plus -> stops(from.value, to.value, by.value, up, inclusive);
+            case Minus -> stops(from.value, to.value, negate(by.value), up, inclusive);
+            default -> false;
+        };
+    }
+
+    private static boolean isCounter(final Expr expr, final Let let) {
+        return expr instanceof final Variable variable && variable.depth == 0 && variable.slot == let.slot;
+    }
+
+    private static Object negate(final Object number) {
+        if (number instanceof final Long integer) {
+            return (integer != Long.MIN_VALUE) ? (Object) (-integer) : (Object) (-(double) integer);
+        }
+        return -(double) number;
+    }
+
+    // Whether counting from `from` in steps of `by` gets past `to` in the direction the loop tests.
+    private static boolean stops(final Object from, final Object to, final Object by, final boolean up, final boolean inclusive) {
+        if (from instanceof final Long f && to instanceof final Long t && by instanceof final Long b) {
+            if (f == Long.MIN_VALUE || t == Long.MIN_VALUE || b == Long.MIN_VALUE) {
+                return false;
+            }
+            return up ? stops(f, t, b, inclusive) : stops(-f, -t, -b, inclusive);
+        }
+
+        final double f = Operators.toDouble(from), t = Operators.toDouble(to), b = Operators.toDouble(by);
+        return up ? stops(f, t, b) : stops(-f, -t, -b);
+    }
+
+    private static boolean stops(final long from, final long to, final long by, final boolean inclusive) {
+        final long end = inclusive ? to : to - 1;
+        // The last value tested is at most `end`, one more step past it mustn't overflow.
+        return from > end || (by > 0 && end <= Long.MAX_VALUE - by);
+    }
+
+    private static boolean stops(final double from, final double to, final double by) {
+        // NaN compares false, so the loop never starts.
+        if (!(from <= to)) {
+            return true;
+        }
+        // A step too small to change the counter leaves it stuck.
+        return Double.isFinite(to) && by > 0 && by >= Math.ulp(Math.max(Math.abs(from), Math.abs(to)));
+    }
+
+    @Override
+    public Stmt visitMatchStmt(Match stmt) {
+        final Expr matchOn = optimize(stmt.matchOn);
+        final List<Case> possibilities = new ArrayList<>();
+        boolean changed = matchOn != stmt.matchOn;
+        for (final Case possibility : stmt.possibilities) {
+            final Stmt toRun = optimize(possibility.toRun);
+            changed |= toRun != possibility.toRun;
+            possibilities.add((toRun == possibility.toRun) ? possibility : new Case(possibility.possibility, orEmpty(toRun)));
+        }
+        final Stmt ifAllElseFails = (stmt.ifAllElseFails != null) ? optimize(stmt.ifAllElseFails) : null;
+        changed |= ifAllElseFails != stmt.ifAllElseFails;
+
+        // With its cases in a table, a match on a literal can be decided now.
+        if (stmt.table != null && matchOn instanceof final Literal literal) {
+            final int index = stmt.table.indexOf(literal.value);
+            return (index != -1) ? possibilities.get(index).toRun : ifAllElseFails;
+        }
+
+        if (!changed) {
+            return stmt;
+        }
+
+        final Match match = new Match(matchOn, possibilities, ifAllElseFails, stmt.isStatic);
+        match.statics = stmt.statics;
+        match.table = stmt.table;
+        return match;
+    }
+
+    @Override
+    public Stmt visitInterfaceStmt(InterfaceStmt stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitRangeStmt(RangeStmt stmt) {
+        final Expr start = stmt.oneArg ? null : optimize(stmt.start);
+        final Expr stop = optimize(stmt.stop);
+        final Expr step = stmt.oneArg ? null : optimize(stmt.step);
+        final Stmt body = optimize(stmt.body);
+
+        if ((body == null || isEmpty(body)) && stop instanceof final Literal to && Operators.isNumber(to.value)) {
+            final Object from = stmt.oneArg ? (Object) 0L : (start instanceof final Literal literal) ? literal.value : null;
+            final Object by = stmt.oneArg ? (Object) 1L : (step instanceof final Literal literal) ? literal.value : null;
+            if (Operators.isNumber(from) && Operators.isNumber(by) && stops(from, to.value, by, true, false)) {
+                return null;
+            }
+        }
+
+        if (start == stmt.start && stop == stmt.stop && step == stmt.step && body == stmt.body) {
+            return stmt;
+        }
+
+        final RangeStmt range = stmt.oneArg
+                ? new RangeStmt(stmt.iterator, stop, orEmpty(body))
+                : new RangeStmt(stmt.iterator, start, stop, step, orEmpty(body));
+        range.scope = stmt.scope;
+        return range;
+    }
+}
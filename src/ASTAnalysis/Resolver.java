@@ -1,5 +1,6 @@
 package ASTAnalysis;
 
+import java.util.ArrayList;
 import java.util.Stack;
 import java.util.Map;
 import java.util.HashMap;
@@ -26,8 +27,26 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         SubStruct
     }
 
+    private static final class Scope {
+        private final Map<String, Boolean> defined = new HashMap<>();
+        private final List<String> slots = new ArrayList<>();
+        // The modifiers of the `let`s declared here.
+        private final Map<String, Modifier> modifiers = new HashMap<>();
+        // Whether a function or method declared inside could keep the scope's environment alive.
+        private boolean captured = false;
+
+        private int slotOf(final String name) {
+            return slots.indexOf(name);
+        }
+
+        private String[] layout() {
+            return slots.toArray(new String[0]);
+        }
+    }
+
     private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes;
+    private final Stack<Scope> scopes;
+    private final Map<String, Modifier> globalModifiers = new HashMap<>();
     private FunctionType currentFunction = FunctionType.None;
     private StructType currentStruct = StructType.None;
 
@@ -38,14 +57,61 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBlockStmt(Block stmt) {
+        if (!declares(stmt.statements)) {
+            resolve(stmt.statements);
+            stmt.scope = null;
+            return null;
+        }
+
         beginScope();
         resolve(stmt.statements);
-        endScope();
+        stmt.scope = endScope();
         return null;
     }
 
+    // Scopes that declare nothing get no environment at runtime, so they don't count towards anyone's depth either.
+    private static boolean declares(final List<Stmt> statements) {
+        for (final Stmt statement : statements) {
+            if (declares(statement)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Branches of an `if` or `match` that aren't blocks declare into the enclosing scope. Blocks and loops get a scope
+    // of their own whenever they declare something.
+    private static boolean declares(final Stmt statement) {
+        if (statement instanceof Let || statement instanceof FunctionStmt || statement instanceof Struct || statement instanceof InterfaceStmt) {
+            return true;
+        } else if (statement instanceof final If ifStmt) {
+            return declares(ifStmt.thenBranch) || (ifStmt.elseBranch != null && declares(ifStmt.elseBranch));
+        } else if (statement instanceof final Match match) {
+            for (final Case possibility : match.possibilities) {
+                if (declares(possibility.toRun)) {
+                    return true;
+                }
+            }
+            return match.ifAllElseFails != null && declares(match.ifAllElseFails);
+        }
+        return false;
+    }
+
+    private void resolveLoopBody(final Stmt body) {
+        if (!(body instanceof final Block block) || !declares(block.statements)) {
+            resolve(body);
+            return;
+        }
+
+        beginScope();
+        resolve(block.statements);
+        final Scope scope = scopes.pop();
+        block.scope = scope.layout();
+        block.reuseFrame = !scope.captured;
+    }
+
     private void beginScope() {
-        scopes.push(new HashMap<>());
+        scopes.push(new Scope());
     }
 
     public void resolve(List<Stmt> statements) {
@@ -62,8 +128,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         expr.accept(this);
     }
 
-    private void endScope() {
-        scopes.pop();
+    private String[] endScope() {
+        return scopes.pop().layout();
     }
 
     @Override
@@ -71,7 +137,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         final StructType enclosingStruct = currentStruct;
         currentStruct = StructType.Struct;
 
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
 
         if (stmt.status == Struct.DERIVES) {
@@ -83,18 +149,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             resolve(stmt.superStruct);
 
             beginScope();
-            scopes.peek().put("super", true);
+            declareImplicit("super");
         }
 
-        beginScope();
-        scopes.peek().put("self", true);
-
         for (final FunctionStmt method : stmt.methods) {
             resolveFunction(method, (method.name.lexeme.equals("anew")) ? FunctionType.Anew : FunctionType.Method);
         }
 
-        endScope();
-
         if (stmt.status == Struct.DERIVES) {
             endScope();
         }
@@ -116,7 +177,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitFunctionStmt(FunctionStmt stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
         resolveFunction(stmt, FunctionType.Func);
 
@@ -130,13 +191,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private void resolveFunction(FunctionStmt stmt, FunctionType type) {
         final FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
+        for (final Scope scope : scopes) {
+            scope.captured = true;
+        }
         beginScope();
         for (final Token param : stmt.params) {
             declare(param);
             define(param);
         }
+        // A method's receiver is passed in the slot after its parameters.
+        if (type == FunctionType.Method || type == FunctionType.Anew) {
+            stmt.selfSlot = stmt.params.size();
+            declareImplicit("self");
+        }
         resolve(stmt.body);
-        endScope();
+        stmt.scope = endScope();
         currentFunction = enclosingFunction;
     }
 
@@ -165,6 +234,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (stmt.value != null) {
             if (currentFunction == FunctionType.Anew) {
                 Astre.error(stmt.keyword, "Can't return a value from `anew` initializer.");
+            } else if (currentFunction != FunctionType.None && stmt.value instanceof final Call call) {
+                call.tailCall = true;
             }
             resolve(stmt.value);
         }
@@ -174,7 +245,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitLetStmt(Let stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
+        (scopes.isEmpty() ? globalModifiers : scopes.peek().modifiers).put(stmt.name.lexeme, stmt.mod);
         if (stmt.init != null) {
             resolve(stmt.init);
         }
@@ -182,18 +254,28 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
-    private void declare(Token name) {
+    private int declare(Token name) {
         if (scopes.isEmpty()) {
-            return;
+            // Redeclared as something other than a `let`, which sets it again.
+            globalModifiers.remove(name.lexeme);
+            return -1;
         }
 
-        final Map<String, Boolean> scope = scopes.peek();
+        final Scope scope = scopes.peek();
 
-        if (scope.containsKey(name.lexeme)) {
+        if (scope.defined.containsKey(name.lexeme)) {
             Astre.error(name, "Already a variable with this name in this scope.");
+            return scope.slotOf(name.lexeme);
         }
 
-        scope.put(name.lexeme, false);
+        scope.defined.put(name.lexeme, false);
+        scope.slots.add(name.lexeme);
+        return scope.slots.size()-1;
+    }
+
+    private void declareImplicit(final String name) {
+        scopes.peek().defined.put(name, true);
+        scopes.peek().slots.add(name);
     }
 
     private void define(Token name) {
@@ -201,21 +283,34 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             return;
         }
 
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().defined.put(name.lexeme, true);
     }
 
     @Override
     public Void visitWhileStmt(While stmt) {
-        resolve(stmt.condition);
+        // The interpreter evaluates the condition inside the loop's environment, so it's resolved there too. That scope
+        // only ever holds something when the body is a lone declaration.
+        if (!declares(stmt.body)) {
+            resolve(stmt.condition);
+            resolveLoopBody(stmt.body);
+            stmt.scope = null;
+            return null;
+        }
+
         beginScope();
+        resolve(stmt.condition);
         resolve(stmt.body);
-        endScope();
+        stmt.scope = endScope();
         return null;
     }
 
     @Override
     public Void visitForStmt(For stmt) {
-        beginScope();
+        final boolean declares = (stmt.init != null && declares(stmt.init)) || declares(stmt.body);
+        if (declares) {
+            beginScope();
+        }
+
         if (stmt.init != null) {
             resolve(stmt.init);
         }
@@ -227,7 +322,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (stmt.inc != null) {
             resolve(stmt.inc);
         }
-        endScope();
+
+        // Every local needs a slot, so the body has to be resolved along with the header.
+        resolveLoopBody(stmt.body);
+        stmt.scope = declares ? endScope() : null;
 
         return null;
     }
@@ -240,28 +338,54 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                 resolve(possibility.possibility);
                 resolve(possibility.toRun);
 
-                stmt.statics.add(interpreter.evaluate(possibility.possibility));
+                stmt.statics.add(Operators.matchKey(interpreter.evaluate(possibility.possibility)));
             }
         } else {
+            boolean constant = true;
             for (final Case possibility : stmt.possibilities) {
                 resolve(possibility.possibility);
                 resolve(possibility.toRun);
+                constant &= isConstant(possibility.possibility);
+            }
+
+            // Literal cases can't have side effects, so they don't need evaluating one at a time.
+            if (constant) {
+                for (final Case possibility : stmt.possibilities) {
+                    stmt.statics.add(Operators.matchKey(interpreter.evaluate(possibility.possibility)));
+                }
             }
         }
+
+        if (stmt.isStatic || !stmt.statics.isEmpty()) {
+            stmt.table = new CaseTable(stmt.statics);
+        }
         return null;
     }
 
+    private static boolean isConstant(final Expr expr) {
+        if (expr instanceof final Grouping grouping) {
+            return isConstant(grouping.expression);
+        } else if (expr instanceof final Unary unary) {
+            return unary.operator.type == TokenType.Minus && unary.right instanceof final Literal literal && Operators.isNumber(literal.value);
+        }
+        return expr instanceof Literal;
+    }
+
     @Override
     public Void visitInterfaceStmt(InterfaceStmt stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
 
+        // Method arities are evaluated in the enclosing environment, the scope only catches duplicate names.
+        for (final Expr arity : stmt.methods.values()) {
+            resolve(arity);
+        }
+
         beginScope();
 
         for (final Token name : stmt.methods.keySet()) {
             declare(name);
             define(name);
-            resolve(stmt.methods.get(name));
         }
 
         endScope();
@@ -288,19 +412,38 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             resolve(stmt.step);
         }
 
-        resolve(stmt.body);
+        resolveLoopBody(stmt.body);
 
-        endScope();
+        stmt.scope = endScope();
         return null;
     }
 
     @Override
     public Void visitAssignExpr(Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        expr.depth = depthOf(expr.name.lexeme);
+        expr.slot = slotOf(expr.depth, expr.name.lexeme);
+        checkAssignment(expr);
         return null;
     }
 
+    // Locals are assigned without looking at their modifiers, so breaking them is caught here instead. Globals this
+    // can't see (declared later, or by a library) are still checked when they're assigned.
+    private void checkAssignment(final Assign expr) {
+        final Modifier modifier = (expr.depth == -1)
+                ? globalModifiers.get(expr.name.lexeme)
+                : scopes.get((scopes.size()-1)-expr.depth).modifiers.get(expr.name.lexeme);
+        if (modifier == null) {
+            return;
+        }
+
+        if (modifier == Modifier.Constant || modifier == Modifier.Both) {
+            Astre.error(expr.name, "Cannot assign variable which was declared constant.");
+        } else if (modifier != Modifier.Nullable && expr.value instanceof final Literal literal && literal.value == null) {
+            Astre.error(expr.name, "Cannot assign `nothing` to a variable that doesn't accept it (put `?` after `let` to allow it).");
+        }
+    }
+
     @Override
     public Void visitBinaryExpr(Binary expr) {
         resolve(expr.left);
@@ -338,7 +481,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitLogicalExpr(Logical expr) {
-        interpreter.visitLogicalExpr(expr);
+        resolve(expr.left);
+        resolve(expr.right);
         return null;
     }
 
@@ -356,7 +500,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         } else if (currentStruct != StructType.SubStruct) {
             Astre.error(expr.keyword, "Can't use `super` in a struct with no super-struct");
         }
-        resolveLocal(expr, expr.keyword);
+        expr.depth = depthOf("super");
+        expr.slot = slotOf(expr.depth, "super");
+        expr.selfDepth = depthOf("self");
+        expr.selfSlot = slotOf(expr.selfDepth, "self");
         return null;
     }
 
@@ -365,7 +512,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (currentStruct == StructType.None) {
             Astre.error(expr.keyword, "Can't use `self` keyword outside of a struct.");
         }
-        resolveLocal(expr, expr.keyword);
+        expr.depth = depthOf("self");
+        expr.slot = slotOf(expr.depth, "self");
         return null;
     }
 
@@ -377,20 +525,28 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariable(Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+        if (!scopes.isEmpty() && scopes.peek().defined.get(expr.name.lexeme) == Boolean.FALSE) {
             Astre.error(expr.name, "Can't read local variable in its own initializer.");
         }
 
-        resolveLocal(expr, expr.name);
+        expr.depth = depthOf(expr.name.lexeme);
+        expr.slot = slotOf(expr.depth, expr.name.lexeme);
         return null;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    private int depthOf(final String name) {
         for (int i = scopes.size()-1; i >= 0; --i) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, (scopes.size()-1)-i);
-                return;
+            if (scopes.get(i).defined.containsKey(name)) {
+                return (scopes.size()-1)-i;
             }
         }
+        return -1;
+    }
+
+    private int slotOf(final int depth, final String name) {
+        if (depth == -1) {
+            return -1;
+        }
+        return scopes.get((scopes.size()-1)-depth).slotOf(name);
     }
 }
\ No newline at end of file
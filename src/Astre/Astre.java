@@ -8,16 +8,21 @@ import java.util.List;
 
 import com.google.gson.*;
 
+import ASTAnalysis.Optimizer;
 import ASTAnalysis.Resolver;
+import Bytecode.VM;
 import LexicalAnalysis.*;
 import Parsing.*;
 import Runtime.*;
+import Runtime.Jit.Jit;
+import Runtime.Tracing.LoopTrace;
 
 public class Astre {
     private static boolean hadError = false, hadRuntimeError = false;
     private static final Interpreter astre = new Interpreter();
+    private static final VM vm = new VM(astre);
 
-    public static boolean traceTokens=false, traceStmt=false, isLibrary=false;
+    public static boolean traceTokens=false, traceStmt=false, traceLookups=false, isLibrary=false, useVm=false, optimize=true;
 
     public static String[] cmdLnArgs;
 
@@ -56,7 +61,13 @@ public class Astre {
             switch (flag) {
                 case "-tokentrace" -> traceTokens = true;
                 case "-tracestmt" -> traceStmt = true;
+                case "-tracelookups" -> traceLookups = true;
                 case "-jsonlib" -> isLibrary = true;
+                case "-vm" -> useVm = true;
+                case "-nojit" -> Jit.enabled = false;
+                case "-notrace" -> LoopTrace.enabled = false;
+                case "-closures" -> astre.compileClosures = true;
+                case "-noopt" -> optimize = false;
                 default -> {
                     System.err.println("Didn't expect flag: " + flag);
                     System.exit(1);
@@ -78,6 +89,7 @@ public class Astre {
     }
 
     public static void error(RuntimeError err) {
+        Output.flush();
         System.err.println(err.getMessage() + "\n[line " + err.token.line + "]");
         hadRuntimeError = true;
     }
@@ -104,7 +116,8 @@ public class Astre {
         String ln;
 
         while (true) {
-            System.out.print("> ");
+            Output.print("> ");
+            Output.flush();
             ln = reader.readLine();
 
             if (ln == null || ln.isEmpty() || ln.equals("exit")) {
@@ -122,7 +135,7 @@ public class Astre {
 
         if (traceTokens) {
             for (final Token trace : tokens) {
-                System.out.println(trace);
+                Output.println(trace);
             }
         }
 
@@ -152,7 +165,16 @@ public class Astre {
                 return;
             }
 
-            astre.interpret(ast);
+            final List<Stmt> program = optimize ? new Optimizer().optimize(ast) : ast;
+            if (useVm) {
+                vm.interpret(program);
+            } else {
+                astre.interpret(program);
+            }
+
+            if (traceLookups) {
+                System.err.println("[lookups] global: " + astre.globalLookups + ", fallback: " + astre.fallbackLookups);
+            }
         }
     }
 
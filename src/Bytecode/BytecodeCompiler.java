@@ -0,0 +1,463 @@
+package Bytecode;
+
+import java.util.List;
+
+import Astre.*;
+import LexicalAnalysis.*;
+import Parsing.*;
+import Parsing.Expr.*;
+import Parsing.Expr.Set;
+import Parsing.Stmt.*;
+import Runtime.AstreStruct;
+import Runtime.GlobalCache;
+
+// Lowers a resolved AST into `Chunk`s for the VM. Locals are addressed by the depth and slot the resolver assigned,
+// so the compiler only has to mirror the environments the interpreter would have created.
+public class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private Chunk chunk;
+
+    public Chunk compile(final List<Stmt> statements) {
+        chunk = new Chunk("<script>");
+        compile(statements, chunk);
+        emit(OpCode.Nothing);
+        emit(OpCode.Return);
+        return chunk.finish();
+    }
+
+    private Chunk.Function compileFunction(final FunctionStmt stmt) {
+        final Chunk enclosing = chunk;
+        chunk = new Chunk(stmt.name.lexeme);
+
+        compile(stmt.body, chunk);
+        emit(OpCode.Nothing);
+        emit(OpCode.Return);
+
+        final Chunk.Function function = new Chunk.Function(stmt, chunk.finish());
+        chunk = enclosing;
+        return function;
+    }
+
+    private void compile(final List<Stmt> statements, final Chunk into) {
+        chunk = into;
+        for (final Stmt statement : statements) {
+            compile(statement);
+        }
+    }
+
+    private void compile(final Stmt stmt) {
+        stmt.accept(this);
+        if (Astre.traceStmt) {
+            emit(OpCode.Trace);
+        }
+    }
+
+    private void compile(final Expr expr) {
+        expr.accept(this);
+    }
+
+    private void emit(final int opCode) {
+        chunk.emit(opCode);
+    }
+
+    private void emit(final int opCode, final int operand) {
+        chunk.emit(opCode);
+        chunk.emit(operand);
+    }
+
+    private void emit(final int opCode, final int operand0, final int operand1) {
+        chunk.emit(opCode);
+        chunk.emit(operand0);
+        chunk.emit(operand1);
+    }
+
+    private int constant(final Object value) {
+        return chunk.constant(value);
+    }
+
+    // Emits a jump whose target is patched later, returning the offset of the target operand.
+    private int emitJump(final int opCode) {
+        emit(opCode);
+        return chunk.emit(-1);
+    }
+
+    private void patchJump(final int operand) {
+        chunk.patch(operand, chunk.count);
+    }
+
+    private void emitDeclare(final Token keyword, final Modifier modifier, final Token name, final int slot) {
+        emit(OpCode.Define, constant(keyword), modifier.ordinal());
+        emit(constant(name));
+        emit(slot);
+    }
+
+    @Override
+    public Void visitAssignExpr(Assign expr) {
+        compile(expr.value);
+        if (expr.depth != -1) {
+            emit(OpCode.SetLocal, expr.depth, expr.slot);
+        } else {
+            emit(OpCode.SetGlobal, constant(expr.name), constant(expr.global));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Binary expr) {
+        if (expr.operator.type == TokenType.Derives || expr.operator.type == TokenType.Implements) {
+            // The right-hand side names a struct or interface, it's never evaluated.
+            compile(expr.left);
+            emit((expr.operator.type == TokenType.Derives) ? OpCode.Derives : OpCode.Implements, constant(expr.operator));
+            emit(AstreStruct.typeId((expr.right instanceof final Variable variable) ? variable.name.lexeme : null));
+            return null;
+        }
+
+        compile(expr.left);
+        compile(expr.right);
+
+        final int opCode = switch (expr.operator.type) {
+            case Plus -> OpCode.Add;
+            case Minus -> OpCode.Subtract;
+            case Star -> OpCode.Multiply;
+            case Slash -> OpCode.Divide;
+            case Modulo -> OpCode.Modulo;
+            case Power -> OpCode.Power;
+            case Greater -> OpCode.Greater;
+            case GreaterEqual -> OpCode.GreaterEqual;
+            case Less -> OpCode.Less;
+            case LessEqual -> OpCode.LessEqual;
+            case EqualEqual -> OpCode.Equal;
+            case BangEqual -> OpCode.NotEqual;
+            default -> throw new IllegalStateException("Unexpected binary operator: " + expr.operator.lexeme);
+        };
+        emit(opCode, constant(expr.operator));
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Call expr) {
+        if (expr.callee instanceof final Get get) {
+            compile(get.obj);
+        } else {
+            compile(expr.callee);
+        }
+        for (final Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        if (expr.callee instanceof final Get get) {
+            emit(OpCode.Invoke, expr.arguments.size(), constant(get.name));
+            emit(constant(get.cache));
+        }
+        emit(OpCode.Call, expr.arguments.size(), constant(expr.paren));
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Get expr) {
+        compile(expr.obj);
+        emit(OpCode.GetProperty, constant(expr.name), constant(expr.cache));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.Nothing);
+        } else {
+            emit(OpCode.Constant, constant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Logical expr) {
+        // Both sides are always evaluated, same as the interpreter.
+        compile(expr.left);
+        compile(expr.right);
+        emit((expr.operator.type == TokenType.Or) ? OpCode.Or : OpCode.And);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Set expr) {
+        compile(expr.obj);
+        compile(expr.value);
+        emit(OpCode.SetProperty, constant(expr.name), constant(expr.cache));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Super expr) {
+        emit(OpCode.GetSuper, expr.depth, expr.slot);
+        emit(expr.selfDepth, expr.selfSlot);
+        emit(constant(expr.method));
+        return null;
+    }
+
+    @Override
+    public Void visitSelfExpr(Self expr) {
+        variable(expr.keyword, expr.depth, expr.slot, new GlobalCache());
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Unary expr) {
+        compile(expr.right);
+        if (expr.operator.type == TokenType.Bang) {
+            emit(OpCode.Not);
+        } else {
+            emit(OpCode.Negate, constant(expr.operator));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable expr) {
+        variable(expr.name, expr.depth, expr.slot, expr.global);
+        return null;
+    }
+
+    private void variable(final Token name, final int depth, final int slot, final GlobalCache global) {
+        if (depth != -1) {
+            emit(OpCode.GetLocal, depth, slot);
+        } else {
+            emit(OpCode.GetGlobal, constant(name), constant(global));
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Block stmt) {
+        pushScope(stmt.scope);
+        compile(stmt.statements, chunk);
+        popScope(stmt.scope);
+        return null;
+    }
+
+    // Scopes the resolver found declare nothing (`scope` is null) run in the enclosing environment.
+    private void pushScope(final String[] scope) {
+        if (scope != null) {
+            emit(OpCode.PushScope, constant(scope));
+        }
+    }
+
+    private void popScope(final String[] scope) {
+        if (scope != null) {
+            emit(OpCode.PopScope);
+        }
+    }
+
+    @Override
+    public Void visitStructStmt(Struct stmt) {
+        if (stmt.superStruct != null) {
+            compile(stmt.superStruct);
+        } else {
+            emit(OpCode.Nothing);
+        }
+
+        final Chunk.Function[] methods = new Chunk.Function[stmt.methods.size()];
+        for (int i = 0; i < methods.length; ++i) {
+            methods[i] = compileFunction(stmt.methods.get(i));
+        }
+
+        emit(OpCode.Struct, constant(new Chunk.Struct(stmt, methods)));
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.Pop);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(FunctionStmt stmt) {
+        emit(OpCode.Closure, constant(compileFunction(stmt)));
+        emitDeclare(stmt.name, Modifier.Nullable, stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(If stmt) {
+        compile(stmt.condition);
+        final int thenJump = emitJump(OpCode.JumpIfFalse);
+        compile(stmt.thenBranch);
+
+        if (stmt.elseBranch != null) {
+            final int elseJump = emitJump(OpCode.Jump);
+            patchJump(thenJump);
+            compile(stmt.elseBranch);
+            patchJump(elseJump);
+        } else {
+            patchJump(thenJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.Print, stmt.newLine ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(ReturnStmt stmt) {
+        if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emit(OpCode.Nothing);
+        }
+        emit(OpCode.Return);
+        return null;
+    }
+
+    @Override
+    public Void visitLetStmt(Let stmt) {
+        if (stmt.init != null) {
+            compile(stmt.init);
+        } else {
+            emit(OpCode.Nothing);
+        }
+        emitDeclare(stmt.keyword, stmt.mod, stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(While stmt) {
+        pushScope(stmt.scope);
+
+        final int loop = chunk.count;
+        compile(stmt.condition);
+        final int exit = emitJump(OpCode.JumpIfFalse);
+        compile(stmt.body);
+        emit(OpCode.Jump, loop);
+        patchJump(exit);
+
+        popScope(stmt.scope);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(For stmt) {
+        pushScope(stmt.scope);
+        if (stmt.init != null) {
+            compile(stmt.init);
+        }
+
+        final int loop = chunk.count;
+        int exit = -1;
+        if (stmt.condition != null) {
+            compile(stmt.condition);
+            exit = emitJump(OpCode.JumpIfFalse);
+        }
+
+        compile(stmt.body);
+        if (stmt.inc != null) {
+            compile(stmt.inc);
+        }
+        emit(OpCode.Jump, loop);
+
+        if (exit != -1) {
+            patchJump(exit);
+        }
+        popScope(stmt.scope);
+        return null;
+    }
+
+    @Override
+    public Void visitMatchStmt(Match stmt) {
+        compile(stmt.matchOn);
+
+        if (stmt.table != null) {
+            final Chunk.MatchTable table = new Chunk.MatchTable(stmt.table, new int[stmt.possibilities.size()]);
+            emit(OpCode.MatchTable, constant(table));
+
+            final int[] exits = new int[stmt.possibilities.size()];
+            for (int i = 0; i < exits.length; ++i) {
+                table.targets[i] = chunk.count;
+                compile(stmt.possibilities.get(i).toRun);
+                exits[i] = emitJump(OpCode.Jump);
+            }
+
+            table.otherwise = chunk.count;
+            if (stmt.ifAllElseFails != null) {
+                compile(stmt.ifAllElseFails);
+            }
+
+            for (final int exit : exits) {
+                patchJump(exit);
+            }
+            return null;
+        }
+
+        // The value being matched stays on the stack while the cases are tried.
+        final int[] exits = new int[stmt.possibilities.size()];
+        for (int i = 0; i < exits.length; ++i) {
+            final Case possibility = stmt.possibilities.get(i);
+            compile(possibility.possibility);
+            final int next = emitJump(OpCode.MatchCase);
+
+            emit(OpCode.Pop);
+            compile(possibility.toRun);
+            exits[i] = emitJump(OpCode.Jump);
+            patchJump(next);
+        }
+
+        emit(OpCode.Pop);
+        if (stmt.ifAllElseFails != null) {
+            compile(stmt.ifAllElseFails);
+        }
+
+        for (final int exit : exits) {
+            patchJump(exit);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitInterfaceStmt(InterfaceStmt stmt) {
+        emit(OpCode.Nothing);
+        emitDeclare(stmt.name, Modifier.Nullable, stmt.name, stmt.slot);
+
+        final Token[] methods = stmt.methods.keySet().toArray(new Token[0]);
+        for (final Token method : methods) {
+            compile(stmt.methods.get(method));
+        }
+
+        emit(OpCode.Interface, constant(new Chunk.Interface(stmt, methods)));
+        return null;
+    }
+
+    @Override
+    public Void visitRangeStmt(RangeStmt stmt) {
+        emit(OpCode.PushScope, constant(stmt.scope));
+        emit(OpCode.Nothing);
+        emitDeclare(stmt.iterator, Modifier.Nullable, stmt.iterator, 0);
+
+        // The counter, the bound and the step live on the stack, separate from the iterator the body can see.
+        if (stmt.oneArg) {
+            emit(OpCode.Constant, constant(0L));
+            compile(stmt.stop);
+            emit(OpCode.Constant, constant(1L));
+        } else {
+            compile(stmt.start);
+            compile(stmt.stop);
+            compile(stmt.step);
+        }
+
+        final int loop = chunk.count;
+        final int exit = emitJump(OpCode.RangeLoop);
+        compile(stmt.body);
+        emit(OpCode.RangeNext, loop);
+        patchJump(exit);
+
+        emit(OpCode.PopScope);
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package Bytecode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import LexicalAnalysis.Token;
+import Parsing.Stmt;
+import Runtime.CaseTable;
+
+// A compiled function body (or script): its flat instruction stream and the constants the instructions refer to.
+public final class Chunk {
+    public final String name;
+    public int[] code = new int[64];
+    public int count = 0;
+    public Object[] constants;
+
+    private final List<Object> constantList = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+
+    public Chunk(final String name) {
+        this.name = name;
+    }
+
+    public int emit(final int word) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        code[count] = word;
+        return count++;
+    }
+
+    public void patch(final int offset, final int word) {
+        code[offset] = word;
+    }
+
+    public int constant(final Object value) {
+        return constantIndices.computeIfAbsent(value, ignore -> {
+            constantList.add(value);
+            return constantList.size()-1;
+        });
+    }
+
+    // Called once compilation is done, trims the code and freezes the constant table into an array.
+    public Chunk finish() {
+        code = Arrays.copyOf(code, count);
+        constants = constantList.toArray();
+        return this;
+    }
+
+    public static final class Function {
+        public final Stmt.FunctionStmt declaration;
+        public final Chunk chunk;
+
+        public Function(final Stmt.FunctionStmt declaration, final Chunk chunk) {
+            this.declaration = declaration;
+            this.chunk = chunk;
+        }
+    }
+
+    public static final class Struct {
+        public final Stmt.Struct declaration;
+        public final Function[] methods;
+
+        public Struct(final Stmt.Struct declaration, final Function[] methods) {
+            this.declaration = declaration;
+            this.methods = methods;
+        }
+    }
+
+    public static final class Interface {
+        public final Stmt.InterfaceStmt declaration;
+        // The order the method arities were pushed in.
+        public final Token[] methods;
+
+        public Interface(final Stmt.InterfaceStmt declaration, final Token[] methods) {
+            this.declaration = declaration;
+            this.methods = methods;
+        }
+    }
+
+    public static final class MatchTable {
+        public final CaseTable cases;
+        public final int[] targets;
+        public int otherwise;
+
+        public MatchTable(final CaseTable cases, final int[] targets) {
+            this.cases = cases;
+            this.targets = targets;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package Bytecode;
+
+// The instruction set of the VM. Each instruction is one int followed by the operands listed next to it, `k` operands
+// index the chunk's constant table and jump targets are absolute offsets into the chunk's code.
+public final class OpCode {
+    private OpCode() {}
+
+    public static final int
+            Constant = 0,       // k
+            Nothing = 1,
+            Pop = 2,
+            GetLocal = 3,       // depth, slot
+            SetLocal = 4,       // depth, slot
+            GetGlobal = 5,      // k name, k GlobalCache
+            SetGlobal = 6,      // k name, k GlobalCache
+            Define = 7,         // k keyword, modifier ordinal, k name, slot
+            Add = 8,            // k operator (every arithmetic and comparison op takes its token for error reporting)
+            Subtract = 9,
+            Multiply = 10,
+            Divide = 11,
+            Modulo = 12,
+            Power = 13,
+            Greater = 14,
+            GreaterEqual = 15,
+            Less = 16,
+            LessEqual = 17,
+            Equal = 18,
+            NotEqual = 19,
+            Derives = 20,       // k operator, type id of the name (-1 when the right-hand side isn't an identifier)
+            Implements = 21,    // k operator, type id
+            Negate = 22,        // k operator
+            Not = 23,
+            And = 24,
+            Or = 25,
+            Jump = 26,          // target
+            JumpIfFalse = 27,   // target
+            PushScope = 28,     // k slot names
+            PopScope = 29,
+            Call = 30,          // argument count, k paren
+            GetProperty = 31,   // k name, k PropertyCache
+            SetProperty = 32,   // k name, k PropertyCache
+            GetSuper = 33,      // depth, slot, self depth, self slot, k method
+            Closure = 34,       // k Chunk.Function
+            Struct = 35,        // k Chunk.Struct
+            Interface = 36,     // k Chunk.Interface
+            Print = 37,         // 1 if a newline follows
+            Return = 38,
+            MatchCase = 39,     // target
+            MatchTable = 40,    // k Chunk.MatchTable
+            RangeLoop = 41,     // target
+            RangeNext = 42,     // target
+            Trace = 43,
+            Invoke = 44;        // argument count, k name, k PropertyCache; always followed by the `Call` it falls back to
+}
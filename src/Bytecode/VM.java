@@ -0,0 +1,485 @@
+package Bytecode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Astre.*;
+import LexicalAnalysis.*;
+import Parsing.*;
+import Parsing.Stmt.Modifier;
+import Runtime.*;
+
+// Runs compiled chunks on an operand stack. Environments are the same objects the interpreter uses, so the VM shares
+// globals, natives and the standard library with it and both can call each other's functions.
+public class VM {
+    private static final Modifier[] MODIFIERS = Modifier.values();
+
+    private static final class Frame {
+        private Chunk chunk;
+        private VmFunction function;
+        private int ip, base;
+        private Environment environment;
+    }
+
+    private final Interpreter interpreter;
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private Frame[] frames = new Frame[64];
+    private int frameCount = 0;
+
+    public VM(final Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    public void interpret(final List<Stmt> ast) {
+        final Chunk script = new BytecodeCompiler().compile(ast);
+
+        sp = frameCount = 0;
+        try {
+            pushFrame(script, null, interpreter.environment, sp);
+            run(0);
+        } catch (RuntimeError err) {
+            Astre.error(err);
+        }
+    }
+
+    // Entered when something outside the VM (a struct constructor, a native) calls a VM function.
+    Object call(final VmFunction function, final Object[] arguments) {
+        final int savedSp = sp, savedFrames = frameCount;
+        try {
+            final int count = function.arity();
+            ensureStack(count + 1);
+            stack[sp++] = function;
+            System.arraycopy(arguments, 0, stack, sp, count);
+            sp += count;
+
+            final int base = sp - count - 1;
+            pushFrame(function.chunk, function, function.frame(stack, base+1), base);
+            return run(savedFrames);
+        } finally {
+            sp = savedSp;
+            frameCount = savedFrames;
+        }
+    }
+
+    private void pushFrame(final Chunk chunk, final VmFunction function, final Environment environment, final int base) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+
+        Frame frame = frames[frameCount];
+        if (frame == null) {
+            frame = frames[frameCount] = new Frame();
+        }
+        ++frameCount;
+
+        frame.chunk = chunk;
+        frame.function = function;
+        frame.environment = environment;
+        frame.base = base;
+        frame.ip = 0;
+
+        // A frame can't push more values than it has instructions, loops always leave the stack balanced.
+        ensureStack(chunk.code.length);
+    }
+
+    private void ensureStack(final int needed) {
+        if (sp + needed >= stack.length) {
+            stack = Arrays.copyOf(stack, java.lang.Math.max(stack.length * 2, sp + needed + 1));
+        }
+    }
+
+    // Runs until the frame count drops back to `stopDepth`, returning the value the last frame returned.
+    private Object run(final int stopDepth) {
+        Frame frame = frames[frameCount-1];
+        int[] code = frame.chunk.code;
+        Object[] constants = frame.chunk.constants;
+        Environment environment = frame.environment;
+        int ip = 0;
+
+        while (true) {
+            final Object[] stack = this.stack;
+
+            switch (code[ip++]) {
+                case OpCode.Constant -> stack[sp++] = constants[code[ip++]];
+                case OpCode.Nothing -> stack[sp++] = null;
+                case OpCode.Pop -> --sp;
+                case OpCode.GetLocal -> {
+                    stack[sp++] = environment.getAt(code[ip], code[ip+1]);
+                    ip += 2;
+                }
+                case OpCode.SetLocal -> {
+                    environment.assignAt(code[ip], code[ip+1], stack[sp-1]);
+                    ip += 2;
+                }
+                case OpCode.GetGlobal -> {
+                    stack[sp++] = interpreter.lookupGlobal((Token) constants[code[ip]], (GlobalCache) constants[code[ip+1]], environment);
+                    ip += 2;
+                }
+                case OpCode.SetGlobal -> {
+                    interpreter.assignGlobal((Token) constants[code[ip]], (GlobalCache) constants[code[ip+1]], stack[sp-1], environment);
+                    ip += 2;
+                }
+                case OpCode.Define -> {
+                    environment.declare((Token) constants[code[ip]], MODIFIERS[code[ip+1]], (Token) constants[code[ip+2]], code[ip+3], stack[--sp]);
+                    ip += 4;
+                }
+                case OpCode.Add -> {
+                    final Object right = stack[--sp], left = stack[sp-1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp-1] = (double) left + (double) right;
+                    } else if (left instanceof final Long l && right instanceof final Long r) {
+                        stack[sp-1] = Operators.add(l, r);
+                    } else {
+                        stack[sp-1] = Operators.binary((Token) constants[code[ip]], left, right);
+                    }
+                    ++ip;
+                }
+                case OpCode.Subtract -> {
+                    final Object right = stack[--sp], left = stack[sp-1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp-1] = (double) left - (double) right;
+                    } else if (left instanceof final Long l && right instanceof final Long r) {
+                        stack[sp-1] = Operators.subtract(l, r);
+                    } else {
+                        stack[sp-1] = Operators.binary((Token) constants[code[ip]], left, right);
+                    }
+                    ++ip;
+                }
+                case OpCode.Multiply -> {
+                    final Object right = stack[--sp], left = stack[sp-1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp-1] = (double) left * (double) right;
+                    } else if (left instanceof final Long l && right instanceof final Long r) {
+                        stack[sp-1] = Operators.multiply(l, r);
+                    } else {
+                        stack[sp-1] = Operators.binary((Token) constants[code[ip]], left, right);
+                    }
+                    ++ip;
+                }
+                case OpCode.Less -> {
+                    final Object right = stack[--sp], left = stack[sp-1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp-1] = (double) left < (double) right;
+                    } else if (left instanceof final Long l && right instanceof final Long r) {
+                        stack[sp-1] = l < r;
+                    } else {
+                        stack[sp-1] = Operators.binary((Token) constants[code[ip]], left, right);
+                    }
+                    ++ip;
+                }
+                case OpCode.Divide -> {
+                    final Object right = stack[--sp], left = stack[sp-1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp-1] = (double) left / (double) right;
+                    } else if (left instanceof final Long l && right instanceof final Long r) {
+                        stack[sp-1] = Operators.divide(l, r);
+                    } else {
+                        stack[sp-1] = Operators.binary((Token) constants[code[ip]], left, right);
+                    }
+                    ++ip;
+                }
+                case OpCode.Greater -> {
+                    final Object right = stack[--sp], left = stack[sp-1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp-1] = (double) left > (double) right;
+                    } else if (left instanceof final Long l && right instanceof final Long r) {
+                        stack[sp-1] = l > r;
+                    } else {
+                        stack[sp-1] = Operators.binary((Token) constants[code[ip]], left, right);
+                    }
+                    ++ip;
+                }
+                case OpCode.GreaterEqual -> {
+                    final Object right = stack[--sp], left = stack[sp-1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp-1] = (double) left >= (double) right;
+                    } else if (left instanceof final Long l && right instanceof final Long r) {
+                        stack[sp-1] = l >= r;
+                    } else {
+                        stack[sp-1] = Operators.binary((Token) constants[code[ip]], left, right);
+                    }
+                    ++ip;
+                }
+                case OpCode.LessEqual -> {
+                    final Object right = stack[--sp], left = stack[sp-1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp-1] = (double) left <= (double) right;
+                    } else if (left instanceof final Long l && right instanceof final Long r) {
+                        stack[sp-1] = l <= r;
+                    } else {
+                        stack[sp-1] = Operators.binary((Token) constants[code[ip]], left, right);
+                    }
+                    ++ip;
+                }
+                case OpCode.Modulo, OpCode.Power -> {
+                    final Object right = stack[--sp];
+                    stack[sp-1] = Operators.binary((Token) constants[code[ip++]], stack[sp-1], right);
+                }
+                case OpCode.Equal -> {
+                    final Object right = stack[--sp];
+                    stack[sp-1] = Operators.equ(stack[sp-1], right);
+                    ++ip;
+                }
+                case OpCode.NotEqual -> {
+                    final Object right = stack[--sp];
+                    stack[sp-1] = !Operators.equ(stack[sp-1], right);
+                    ++ip;
+                }
+                case OpCode.Derives, OpCode.Implements -> {
+                    final Token operator = (Token) constants[code[ip]];
+                    stack[sp-1] = (code[ip-1] == OpCode.Derives)
+                            ? Operators.derives(operator, stack[sp-1], code[ip+1])
+                            : Operators.implementsInterface(operator, stack[sp-1], code[ip+1]);
+                    ip += 2;
+                }
+                case OpCode.Negate -> {
+                    final Object right = stack[sp-1];
+                    stack[sp-1] = (right instanceof Double) ? -(double) right : Operators.unary((Token) constants[code[ip]], right);
+                    ++ip;
+                }
+                case OpCode.Not -> stack[sp-1] = !Operators.isTruthy(stack[sp-1]);
+                case OpCode.And -> {
+                    final boolean right = Operators.isTruthy(stack[--sp]);
+                    stack[sp-1] = Operators.isTruthy(stack[sp-1]) && right;
+                }
+                case OpCode.Or -> {
+                    final boolean right = Operators.isTruthy(stack[--sp]);
+                    stack[sp-1] = Operators.isTruthy(stack[sp-1]) || right;
+                }
+                case OpCode.Jump -> ip = code[ip];
+                case OpCode.JumpIfFalse -> ip = Operators.isTruthy(stack[--sp]) ? ip+1 : code[ip];
+                case OpCode.PushScope -> environment = new Environment(environment, (String[]) constants[code[ip++]]);
+                case OpCode.PopScope -> environment = environment.enclosing;
+                case OpCode.Call -> {
+                    final int argCount = code[ip];
+                    final Token paren = (Token) constants[code[ip+1]];
+                    ip += 2;
+
+                    final int base = sp-argCount-1;
+                    final Object callee = stack[base];
+                    if (!(callee instanceof final AstreCallable function)) {
+                        throw new RuntimeError(paren, "Can only call function name and classes.");
+                    }
+                    if (function.arity() != -1 && argCount != function.arity()) {
+                        throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + argCount + ".");
+                    }
+
+                    VmFunction target = null;
+                    if (callee instanceof final VmFunction vmFunction && vmFunction.vm == this) {
+                        target = vmFunction;
+                    } else if (callee instanceof final AstreStruct struct) {
+                        final AstreInstance instance = new AstreInstance(struct);
+                        final AstreFunction anew = struct.findMethod("anew");
+                        if (anew == null) {
+                            sp = base;
+                            stack[sp++] = instance;
+                            continue;
+                        } else if (anew instanceof final VmFunction vmAnew && vmAnew.vm == this) {
+                            // A bound `anew` returns its instance, so the call can run as an ordinary frame.
+                            target = (VmFunction) vmAnew.bind(instance);
+                        }
+                    }
+
+                    if (target != null) {
+                        frame.ip = ip;
+                        frame.environment = environment;
+                        pushFrame(target.chunk, target, target.frame(this.stack, base+1), base);
+
+                        frame = frames[frameCount-1];
+                        code = frame.chunk.code;
+                        constants = frame.chunk.constants;
+                        environment = frame.environment;
+                        ip = 0;
+                    } else {
+                        final Object result = callForeign(function, environment, base+1, argCount);
+                        sp = base;
+                        this.stack[sp++] = result;
+                    }
+                }
+                case OpCode.Invoke -> {
+                    final int argCount = code[ip];
+                    final Token name = (Token) constants[code[ip+1]];
+                    final PropertyCache cache = (PropertyCache) constants[code[ip+2]];
+                    ip += 3;
+
+                    // A method of this VM is called with the receiver as `self`, never bound. Anything else becomes
+                    // a property read, leaving the following `Call` to do the call.
+                    final int base = sp-argCount-1;
+                    if (stack[base] instanceof final AstreInstance instance && cache.method(instance, name.lexeme) instanceof final VmFunction method
+                            && method.vm == this && !method.isAnew()) {
+                        if (argCount != method.arity()) {
+                            throw new RuntimeError((Token) constants[code[ip+2]], "Expected " + method.arity() + " arguments but got " + argCount + ".");
+                        }
+
+                        frame.ip = ip + 3;
+                        frame.environment = environment;
+                        pushFrame(method.chunk, method, method.frame(this.stack, base+1, instance), base);
+
+                        frame = frames[frameCount-1];
+                        code = frame.chunk.code;
+                        constants = frame.chunk.constants;
+                        environment = frame.environment;
+                        ip = 0;
+                    } else if (stack[base] instanceof final AstreInstance instance) {
+                        stack[base] = cache.get(instance, name);
+                    } else {
+                        throw new RuntimeError(name, "Only instances have properties");
+                    }
+                }
+                case OpCode.GetProperty -> {
+                    final Token name = (Token) constants[code[ip]];
+                    final PropertyCache cache = (PropertyCache) constants[code[ip+1]];
+                    ip += 2;
+                    if (!(stack[sp-1] instanceof final AstreInstance obj)) {
+                        throw new RuntimeError(name, "Only instances have properties");
+                    }
+                    stack[sp-1] = cache.get(obj, name);
+                }
+                case OpCode.SetProperty -> {
+                    final Token name = (Token) constants[code[ip]];
+                    final PropertyCache cache = (PropertyCache) constants[code[ip+1]];
+                    ip += 2;
+                    final Object value = stack[--sp];
+                    if (!(stack[sp-1] instanceof final AstreInstance obj)) {
+                        throw new RuntimeError(name, "Only instances have fields.");
+                    }
+                    stack[sp-1] = cache.set(obj, name, value);
+                }
+                case OpCode.GetSuper -> {
+                    stack[sp++] = getSuper(environment, code[ip], code[ip+1], code[ip+2], code[ip+3], (Token) constants[code[ip+4]]);
+                    ip += 5;
+                }
+                case OpCode.Closure -> stack[sp++] = new VmFunction(this, (Chunk.Function) constants[code[ip++]], environment, false);
+                case OpCode.Struct -> defineStruct((Chunk.Struct) constants[code[ip++]], stack[--sp], environment);
+                case OpCode.Interface -> defineInterface((Chunk.Interface) constants[code[ip++]], environment);
+                case OpCode.Print -> {
+                    Output.printValue(stack[--sp]);
+                    if (code[ip++] == 1) {
+                        Output.println();
+                    }
+                }
+                case OpCode.Return -> {
+                    final Object value = stack[--sp];
+                    final Object result = (frame.function != null) ? frame.function.returned(value) : value;
+
+                    sp = frame.base;
+                    if (--frameCount == stopDepth) {
+                        return result;
+                    }
+
+                    frame = frames[frameCount-1];
+                    code = frame.chunk.code;
+                    constants = frame.chunk.constants;
+                    environment = frame.environment;
+                    ip = frame.ip;
+                    this.stack[sp++] = result;
+                }
+                case OpCode.MatchCase -> {
+                    final Object possibility = stack[--sp];
+                    ip = Operators.equ(stack[sp-1], possibility) ? ip+1 : code[ip];
+                }
+                case OpCode.MatchTable -> {
+                    final Chunk.MatchTable table = (Chunk.MatchTable) constants[code[ip]];
+                    final int index = table.cases.indexOf(stack[--sp]);
+                    ip = (index != -1) ? table.targets[index] : table.otherwise;
+                }
+                case OpCode.RangeLoop -> {
+                    final Object i = stack[sp-3], stop = stack[sp-2];
+                    if ((i instanceof final Long l && stop instanceof final Long r) ? l < r : Operators.toDouble(i) < Operators.toDouble(stop)) {
+                        environment.assignAt(0, 0, i);
+                        ++ip;
+                    } else {
+                        sp -= 3;
+                        ip = code[ip];
+                    }
+                }
+                case OpCode.RangeNext -> {
+                    final Object i = stack[sp-3], step = stack[sp-1];
+                    stack[sp-3] = (i instanceof final Long l && step instanceof final Long r) ? Operators.add(l, r) : (Object) (Operators.toDouble(i) + Operators.toDouble(step));
+                    ip = code[ip];
+                }
+                case OpCode.Trace -> Output.println((Object) null);
+                default -> throw new IllegalStateException("Unknown op code " + code[ip-1] + " in " + frame.chunk.name);
+            }
+        }
+    }
+
+    private Object callForeign(final AstreCallable function, final Environment environment, final int first, final int argCount) {
+        final Object[] arguments = Interpreter.arguments(function, argCount);
+        System.arraycopy(stack, first, arguments, 0, argCount);
+        Rope.flatten(arguments);
+
+        // Libraries define themselves into whichever environment is current when they're imported.
+        final Environment previous = interpreter.environment;
+        try {
+            interpreter.environment = environment;
+            return function.call(interpreter, arguments);
+        } finally {
+            interpreter.environment = previous;
+        }
+    }
+
+    private static Object getSuper(final Environment environment, final int depth, final int slot, final int selfDepth, final int selfSlot, final Token method) {
+        final AstreStruct superStruct = (AstreStruct) environment.getAt(depth, slot);
+        final AstreInstance obj = (AstreInstance) environment.getAt(selfDepth, selfSlot);
+        final AstreFunction function = superStruct.findMethod(method.lexeme);
+        if (function == null) {
+            throw new RuntimeError(method, "Undefined property `" + method.lexeme + "`.");
+        }
+
+        return function.bind(obj);
+    }
+
+    private void defineStruct(final Chunk.Struct struct, final Object superStruct, final Environment environment) {
+        final Stmt.Struct stmt = struct.declaration;
+        if (stmt.superStruct != null) {
+            switch (stmt.status) {
+                case Stmt.Struct.DERIVES -> {
+                    if (!(superStruct instanceof AstreStruct)) {
+                        throw new RuntimeError(stmt.superStruct.name, "Super-Struct must be a struct");
+                    }
+                }
+                case Stmt.Struct.IMPLEMENTS -> {
+                    if (!(superStruct instanceof AstreInterface)) {
+                        throw new RuntimeError(stmt.superStruct.name, "Super-Interface must be an interface");
+                    }
+                }
+                default -> {}
+            }
+        }
+
+        environment.declare(stmt.name, Modifier.Nullable, stmt.name, stmt.slot, null);
+
+        Environment closure = environment;
+        if (stmt.status != Stmt.Struct.NOTHING && stmt.status != Stmt.Struct.IMPLEMENTS) {
+            closure = new Environment(environment, Environment.SUPER_SCOPE);
+            closure.defineAt(stmt.name, Modifier.Constant, 0, superStruct);
+        }
+
+        final Map<String, AstreFunction> methods = new HashMap<>();
+        for (final Chunk.Function method : struct.methods) {
+            final String name = method.declaration.name.lexeme;
+            methods.put(name, new VmFunction(this, method, closure, name.equals("anew")));
+        }
+
+        if (stmt.status == Stmt.Struct.DERIVES || stmt.status == Stmt.Struct.NOTHING) {
+            environment.initialize(stmt.name, stmt.slot, new AstreStruct(stmt.name.lexeme, (AstreStruct) superStruct, methods));
+        } else {
+            environment.initialize(stmt.name, stmt.slot, new AstreStruct(stmt.name.lexeme, (AstreInterface) superStruct, methods));
+        }
+    }
+
+    private void defineInterface(final Chunk.Interface prototype, final Environment environment) {
+        final Map<String, Integer> methods = new HashMap<>();
+        sp -= prototype.methods.length;
+        for (int i = 0; i < prototype.methods.length; ++i) {
+            methods.put(prototype.methods[i].lexeme, ((Number) stack[sp+i]).intValue());
+        }
+
+        final Stmt.InterfaceStmt stmt = prototype.declaration;
+        environment.initialize(stmt.name, stmt.slot, new AstreInterface(stmt.name.lexeme, methods));
+    }
+}
@@ -0,0 +1,57 @@
+package Bytecode;
+
+import Parsing.Stmt.Modifier;
+import Runtime.*;
+
+// A function compiled for the VM. It stays an `AstreFunction` so structs, `super` and natives can't tell the difference.
+public class VmFunction extends AstreFunction {
+    final VM vm;
+    final Chunk chunk;
+
+    public VmFunction(final VM vm, final Chunk.Function function, final Environment closure, final boolean isAnew) {
+        super(function.declaration, closure, isAnew);
+        this.vm = vm;
+        this.chunk = function.chunk;
+    }
+
+    private VmFunction(final VmFunction function, final AstreInstance receiver) {
+        super(function.declaration, function.closure, function.isAnew, receiver);
+        this.vm = function.vm;
+        this.chunk = function.chunk;
+    }
+
+    @Override
+    public AstreFunction bind(final AstreInstance instance) {
+        return new VmFunction(this, instance);
+    }
+
+    boolean isAnew() {
+        return isAnew;
+    }
+
+    // The environment a call of this function runs in, with the arguments in the parameters' slots.
+    Environment frame(final Object[] stack, final int first) {
+        return frame(stack, first, receiver);
+    }
+
+    Environment frame(final Object[] stack, final int first, final AstreInstance self) {
+        final Environment environment = new Environment(closure, declaration.scope);
+        for (int i = 0; i < declaration.params.size(); ++i) {
+            environment.defineAt(null, Modifier.Nullable, i, stack[first+i]);
+        }
+        if (declaration.selfSlot != -1) {
+            environment.defineAt(null, Modifier.Constant, declaration.selfSlot, self);
+        }
+        return environment;
+    }
+
+    // `anew` always returns the instance it was bound to.
+    Object returned(final Object value) {
+        return isAnew ? receiver : value;
+    }
+
+    @Override
+    public Object call(final Interpreter interpreter, final Object[] arguments) {
+        return vm.call(this, arguments);
+    }
+}
@@ -191,7 +191,9 @@ public class Scanner {
             eat();
         }
 
+        boolean whole = true;
         if (peek() == '.' && isDigit(peekNext())) {
+            whole = false;
             eat();
 
             do {
@@ -199,7 +201,9 @@ public class Scanner {
             } while (isDigit(peek()));
         }
 
-        addToken(Number, Double.parseDouble(code.substring(start, current)));
+        // Whole numbers are integers, unless they have too many digits to be sure they fit in one.
+        final String text = code.substring(start, current);
+        addToken(Number, (whole && text.length() < 19) ? (Object) Long.parseLong(text) : (Object) Double.parseDouble(text));
     }
 
     private boolean atEOF() {
@@ -3,6 +3,9 @@ package Parsing;
 import java.util.List;
 
 import LexicalAnalysis.*;
+import Runtime.Nodes.*;
+import Runtime.GlobalCache;
+import Runtime.PropertyCache;
 
 public abstract sealed class Expr {
     public interface Visitor<R> {
@@ -40,6 +43,8 @@ public abstract sealed class Expr {
 
         public final Token name;
         public final Expr value;
+        public int depth = -1, slot = -1;
+        public final transient GlobalCache global = new GlobalCache();
     }
 
     public static final class Binary extends Expr {
@@ -58,6 +63,7 @@ public abstract sealed class Expr {
         public final Expr left;
         public final Token operator;
         public final Expr right;
+        public transient BinaryNode node = BinaryNode.UNINITIALIZED;
     }
 
     public static final class Call extends Expr {
@@ -76,6 +82,10 @@ public abstract sealed class Expr {
         public final Expr callee;
         public final Token paren;
         public final List<Expr> arguments;
+        // What the arity of the last call made here was checked against.
+        public transient Object checkedCallee = null;
+        // Set by the resolver on `return f(...)`: the call is handed back to the caller's `AstreFunction.invoke`.
+        public boolean tailCall = false;
     }
 
     public static final class Get extends Expr {
@@ -92,6 +102,7 @@ public abstract sealed class Expr {
 
         public final Expr obj;
         public final Token name;
+        public final transient PropertyCache cache = new PropertyCache();
     }
 
     public static final class Grouping extends Expr {
@@ -156,6 +167,7 @@ public abstract sealed class Expr {
         public final Expr obj;
         public final Token name;
         public final Expr value;
+        public final transient PropertyCache cache = new PropertyCache();
     }
 
     public static final class Super extends Expr {
@@ -172,6 +184,7 @@ public abstract sealed class Expr {
 
         public final Token keyword;
         public final Token method;
+        public int depth = -1, slot = -1, selfDepth = -1, selfSlot = -1;
     }
 
     public static final class Self extends Expr {
@@ -186,6 +199,7 @@ public abstract sealed class Expr {
         }
 
         public final Token keyword;
+        public int depth = -1, slot = -1;
     }
 
     public static final class Unary extends Expr {
@@ -202,6 +216,7 @@ public abstract sealed class Expr {
 
         public final Token operator;
         public final  Expr right;
+        public transient UnaryNode node = UnaryNode.UNINITIALIZED;
     }
 
     public static final class Variable extends Expr {
@@ -216,6 +231,8 @@ public abstract sealed class Expr {
         }
 
         public final Token name;
+        public int depth = -1, slot = -1;
+        public final transient GlobalCache global = new GlobalCache();
     }
 
     public abstract <R> R accept(Visitor<R> visitor);
@@ -5,6 +5,11 @@ import java.util.List;
 import java.util.Map;
 
 import LexicalAnalysis.*;
+import Runtime.CaseTable;
+import Runtime.Environment;
+import Runtime.Closures.StmtCode;
+import Runtime.Jit.JitCode;
+import Runtime.Tracing.LoopTrace;
 
 public abstract sealed class Stmt {
     public interface Visitor<R> {
@@ -23,6 +28,8 @@ public abstract sealed class Stmt {
         R visitRangeStmt(RangeStmt stmt);
     }
 
+    public static final String[] NO_SCOPE = {};
+
     public final String classType;
 
     public Stmt(final String classType) {
@@ -41,6 +48,11 @@ public abstract sealed class Stmt {
         }
 
         public final List<Stmt> statements;
+        // Null when the block declares nothing and runs in the enclosing environment.
+        public String[] scope = NO_SCOPE;
+        // A loop body no closure can capture keeps one frame for every iteration run in the same enclosing environment.
+        public boolean reuseFrame = false;
+        public transient Environment frame = null;
     }
 
     public static final class Struct extends Stmt {
@@ -63,6 +75,7 @@ public abstract sealed class Stmt {
         public final int status;
         public final List<FunctionStmt> methods;
         public final boolean isStatic;
+        public int slot = -1;
 
         public static final int NOTHING = 0, DERIVES = 1, IMPLEMENTS = 2;
     }
@@ -99,6 +112,13 @@ public abstract sealed class Stmt {
         public final List<Token> params;
         public final List<Stmt> body;
         public final boolean isStatic;
+        public int slot = -1;
+        public String[] scope = NO_SCOPE;
+        // Where a method keeps `self` in its frame, -1 for plain functions.
+        public int selfSlot = -1;
+        public transient StmtCode code = null;
+        public transient int calls = 0, deopts = 0;
+        public transient JitCode jitCode = null;
     }
 
     public static final class If extends Stmt {
@@ -176,6 +196,7 @@ public abstract sealed class Stmt {
         public final Expr init;
         public final Modifier mod;
         public final Token keyword;
+        public int slot = -1;
     }
 
     public static final class While extends Stmt {
@@ -192,6 +213,8 @@ public abstract sealed class Stmt {
 
         public final Expr condition;
         public final Stmt body;
+        public String[] scope = NO_SCOPE;
+        public transient LoopTrace trace = null;
     }
 
     public static final class For extends Stmt {
@@ -212,6 +235,8 @@ public abstract sealed class Stmt {
         public Expr condition;
         public Expression inc;
         public Stmt body;
+        public String[] scope = NO_SCOPE;
+        public transient LoopTrace trace = null;
     }
 
     public static final class Match extends Stmt {
@@ -232,6 +257,8 @@ public abstract sealed class Stmt {
         public final Stmt ifAllElseFails;
         public final boolean isStatic;
         public List<Object> statics;
+        // Set by the resolver when every case is known up front (static, or all literals).
+        public transient CaseTable table = null;
     }
 
     public static final class Case {
@@ -258,6 +285,7 @@ public abstract sealed class Stmt {
         public final Token name;
         public final Map<Token, Expr> methods;
         public final boolean isStatic;
+        public int slot = -1;
     }
 
     public static final class RangeStmt extends Stmt {
@@ -289,6 +317,8 @@ public abstract sealed class Stmt {
         public final boolean oneArg;
         public final Expr start, stop, step;
         public final Stmt body;
+        public String[] scope = NO_SCOPE;
+        public transient LoopTrace trace = null;
     }
 
     public abstract <R> R accept(Visitor<R> visitor);
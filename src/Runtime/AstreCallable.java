@@ -1,13 +1,17 @@
 package Runtime;
 
-import java.util.List;
-
 public interface AstreCallable {
     default int arity() {
         return 0;
     }
 
-    default Object call(Interpreter interpreter, List<Object> arguments) {
+    // How many elements callers should give the arguments array, when that's more than the arguments themselves. A
+    // function asks for its whole frame so it can keep the array as its slots instead of copying into a new one.
+    default int frameSize() {
+        return 0;
+    }
+
+    default Object call(Interpreter interpreter, Object[] arguments) {
         return null;
     }
-}
\ No newline at end of file
+}
@@ -1,30 +1,34 @@
 package Runtime;
 
-import java.util.List;
-
 import Parsing.*;
+import Runtime.Closures.StmtCode;
+import Runtime.Jit.Jit;
 
 public class AstreFunction implements AstreCallable {
-    private final Stmt.FunctionStmt declaration;
-    private final Environment closure;
-    private final boolean isAnew;
+    protected final Stmt.FunctionStmt declaration;
+    protected final Environment closure;
+    protected final boolean isAnew;
+    // The instance a method was bound to, passed as `self` when it's called.
+    protected final AstreInstance receiver;
 
     public AstreFunction(Stmt.FunctionStmt declaration, Environment closure) {
-        this.declaration = declaration;
-        this.closure = closure;
-        this.isAnew = false;
+        this(declaration, closure, false);
     }
 
     public AstreFunction(final Stmt.FunctionStmt declaration, final Environment closure, final boolean isAnew) {
+        this(declaration, closure, isAnew, null);
+    }
+
+    protected AstreFunction(final Stmt.FunctionStmt declaration, final Environment closure, final boolean isAnew, final AstreInstance receiver) {
         this.declaration = declaration;
         this.closure = closure;
         this.isAnew = isAnew;
+        this.receiver = receiver;
     }
 
+    // Only needed when a method is used as a value; calling `obj.method(...)` goes through `invoke` directly.
     public AstreFunction bind(final AstreInstance instance) {
-        final Environment environment = new Environment(closure);
-        environment.define(null, Stmt.Modifier.Constant, "self", instance);
-        return new AstreFunction(declaration, environment, isAnew);
+        return new AstreFunction(declaration, closure, isAnew, instance);
     }
 
     @Override
@@ -33,27 +37,62 @@ public class AstreFunction implements AstreCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        final Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); ++i) {
-            environment.define(null, Stmt.Modifier.Nullable, declaration.params.get(i).lexeme, arguments.get(i));
+    public int frameSize() {
+        return declaration.scope.length;
+    }
+
+    public boolean declaredBy(final Stmt.FunctionStmt declaration) {
+        return this.declaration == declaration;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return invoke(interpreter, receiver, arguments);
+    }
+
+    // Calls the function with `self` (null for plain functions) passed in its frame. Tail calls its body returns are
+    // made here, one after the other, rather than nested inside it.
+    public Object invoke(final Interpreter interpreter, final AstreInstance self, final Object[] arguments) {
+        Object result = run(interpreter, self, arguments);
+        while (result instanceof final TailCall call) {
+            result = call.function.run(interpreter, call.self, call.arguments);
         }
+        return result;
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            if (isAnew) {
-                return closure.getAt(0, "self");
+    private Object run(final Interpreter interpreter, final AstreInstance self, final Object[] arguments) {
+        if (Jit.enabled) {
+            final Object result = Jit.call(interpreter, declaration, closure, self, isAnew, arguments);
+            if (result != Jit.NOT_COMPILED) {
+                return result;
             }
+        }
 
-            return returnValue.value;
+        final Environment environment = new Environment(closure, declaration.scope, arguments);
+        if (declaration.selfSlot != -1) {
+            environment.defineAt(null, Stmt.Modifier.Constant, declaration.selfSlot, self);
         }
 
+        // `code` is set when the body has been through the closure compiler.
+        final Object result = (declaration.code != null) ? declaration.code.execute(environment) : interpreter.executeBlock(declaration.body, environment);
         if (isAnew) {
-            return closure.getAt(0, "self");
+            return self;
         }
 
-        return null;
+        return (result != StmtCode.NORMAL) ? result : null;
+    }
+
+    // A call to a function in tail position, returned to `invoke` instead of made.
+    static final class TailCall {
+        private final AstreFunction function;
+        private final AstreInstance self;
+        private final Object[] arguments;
+
+        TailCall(final AstreFunction function, final AstreInstance self, final Object[] arguments) {
+            this.function = function;
+            this.self = self;
+            this.arguments = arguments;
+        }
     }
 
     @Override
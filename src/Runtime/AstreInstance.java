@@ -2,20 +2,23 @@ package Runtime;
 
 import LexicalAnalysis.Token;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class AstreInstance {
     public final AstreStruct struct;
-    private final Map<String, Object> fields = new HashMap<>();
+    Shape shape;
+    Object[] values;
 
     public AstreInstance(final AstreStruct struct) {
         this.struct = struct;
+        this.shape = struct.rootShape;
+        this.values = new Object[struct.fieldCount];
     }
 
     public Object get(final Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        final int index = shape.indexOf(name.lexeme);
+        if (index != -1) {
+            return values[index];
         }
 
         final AstreFunction method = struct.findMethod(name.lexeme);
@@ -26,11 +29,40 @@ public class AstreInstance {
         throw new RuntimeError(name, "Undefined property `" + name.lexeme + "`.");
     }
 
+    // The field's value without falling back to methods, null when there's no such field.
+    public Object field(final String name) {
+        final int index = shape.indexOf(name);
+        return (index != -1) ? values[index] : null;
+    }
+
+    // The method `obj.name(...)` would call, null when a field of that name shadows it or there's no such method.
+    public AstreFunction method(final String name) {
+        return (shape.indexOf(name) != -1) ? null : struct.findMethod(name);
+    }
+
     public Object set(final Token name, final Object value) {
-        fields.put(name.lexeme, value);
+        final int index = shape.indexOf(name.lexeme);
+        if (index != -1) {
+            values[index] = value;
+        } else {
+            final Shape target = shape.with(name.lexeme);
+            put(target, target.size() - 1, value);
+        }
         return value;
     }
 
+    // Adds a field: `target` is this instance's shape plus the field, which goes at `index`.
+    void put(final Shape target, final int index, final Object value) {
+        if (index == values.length) {
+            values = Arrays.copyOf(values, index + 1);
+            // Later instances start out with room for every field this one ended up with.
+            struct.fieldCount = Math.max(struct.fieldCount, index + 1);
+        }
+
+        shape = target;
+        values[index] = value;
+    }
+
     @Override
     public String toString() {
         return struct.name + " instance";
@@ -1,19 +1,42 @@
 package Runtime;
 
-import java.util.List;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.Map;
 
 public class AstreStruct implements AstreCallable {
+    // Struct and interface names are numbered in the order they're first seen, so a type test is a bit lookup.
+    private static final Map<String, Integer> typeIds = new HashMap<>();
+
     public final String name;
     public final AstreStruct superStruct;
     public final AstreInterface superInterface;
+    // Every method an instance can call, inherited ones included.
     private final Map<String, AstreFunction> methods;
+    private final AstreFunction anew;
+    // The ids of this struct's name and its super-structs' names, and of the interfaces any of them implement.
+    private final BitSet derived, implemented;
+    // Where instances' field layouts start, and how many fields they've been seen to need.
+    final Shape rootShape = new Shape();
+    int fieldCount = 0;
 
     public AstreStruct(final String name, final AstreStruct superStruct, final Map<String, AstreFunction> methods) {
         this.name = name;
         this.superStruct = superStruct;
         this.superInterface = null;
-        this.methods = methods;
+
+        if (superStruct != null) {
+            this.methods = new HashMap<>(superStruct.methods);
+            this.methods.putAll(methods);
+            this.derived = (BitSet) superStruct.derived.clone();
+            this.implemented = superStruct.implemented;
+        } else {
+            this.methods = methods;
+            this.derived = new BitSet();
+            this.implemented = new BitSet();
+        }
+        this.derived.set(typeId(name));
+        this.anew = this.methods.get("anew");
     }
 
     public AstreStruct(final String name, final AstreInterface superInterface, final Map<String, AstreFunction> methods) {
@@ -21,6 +44,11 @@ public class AstreStruct implements AstreCallable {
         this.superInterface = superInterface;
         this.superStruct = null;
         this.methods = methods;
+        this.anew = methods.get("anew");
+        this.derived = new BitSet();
+        this.derived.set(typeId(name));
+        this.implemented = new BitSet();
+        this.implemented.set(typeId(superInterface.name));
 
         AstreFunction func;
 
@@ -35,29 +63,42 @@ public class AstreStruct implements AstreCallable {
         }
     }
 
-    public AstreFunction findMethod(final String name) {
-        final AstreFunction func = methods.get(name);
-        if (func != null) {
-            return func;
-        } else if (superStruct != null) {
-            return superStruct.findMethod(name);
-        } else {
-            return null;
+    // -1 for a null name.
+    public static int typeId(final String name) {
+        if (name == null) {
+            return -1;
         }
+        return typeIds.computeIfAbsent(name, ignored -> typeIds.size());
+    }
+
+    public AstreFunction findMethod(final String name) {
+        return methods.get(name);
+    }
+
+    // Whether this struct is, or derives from, a struct with the name numbered `typeId`.
+    public boolean derives(final int typeId) {
+        return derived.get(typeId);
+    }
+
+    public boolean implementsInterface(final int typeId) {
+        return implemented.get(typeId);
     }
 
     @Override
     public int arity() {
-        final AstreFunction anew = findMethod("anew");
         return (anew != null) ? anew.arity() : 0;
     }
 
     @Override
-    public Object call(final Interpreter interpreter, final List<Object> arguments) {
+    public int frameSize() {
+        return (anew != null) ? anew.frameSize() : 0;
+    }
+
+    @Override
+    public Object call(final Interpreter interpreter, final Object[] arguments) {
         final AstreInstance instance = new AstreInstance(this);
-        final AstreFunction anew = findMethod("anew");
         if (anew != null) {
-            anew.bind(instance).call(interpreter, arguments);
+            anew.invoke(interpreter, instance, arguments);
         }
         return instance;
     }
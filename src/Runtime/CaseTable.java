@@ -0,0 +1,72 @@
+package Runtime;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dispatch for a match whose cases are known before it runs: the case index for a value in one lookup instead of
+// comparing against every case. Cases that are all integers close together index straight into an array, anything
+// else goes through a hash map. The first of several equal cases wins, like the linear search did.
+public final class CaseTable {
+    private static final int MAX_DENSE = 1024;
+
+    // Dense: `dense[key - min]` is the case index, or -1.
+    private final int[] dense;
+    private final long min;
+    private final Map<Object, Integer> indices;
+
+    public CaseTable(final List<Object> keys) {
+        final long[] range = denseRange(keys);
+        if (range != null) {
+            min = range[0];
+            dense = new int[(int) (range[1] - range[0] + 1)];
+            Arrays.fill(dense, -1);
+            for (int i = keys.size() - 1; i >= 0; --i) {
+                dense[(int) ((long) keys.get(i) - min)] = i;
+            }
+            indices = null;
+        } else {
+            min = 0;
+            dense = null;
+            indices = new HashMap<>();
+            for (int i = 0; i < keys.size(); ++i) {
+                indices.putIfAbsent(keys.get(i), i);
+            }
+        }
+    }
+
+    // Matches the keys as `Operators.matchKey` makes them, so `2.0` finds `case 2`.
+    public int indexOf(final Object value) {
+        final Object key = Operators.matchKey(value);
+        if (dense != null) {
+            if (key instanceof final Long integer) {
+                final long offset = integer - min;
+                return (offset >= 0 && offset < dense.length) ? dense[(int) offset] : -1;
+            }
+            return -1;
+        }
+
+        final Integer index = indices.get(key);
+        return (index != null) ? index : -1;
+    }
+
+    private static long[] denseRange(final List<Object> keys) {
+        if (keys.isEmpty()) {
+            return null;
+        }
+
+        long low = Long.MAX_VALUE, high = Long.MIN_VALUE;
+        for (final Object key : keys) {
+            if (!(key instanceof final Long integer)) {
+                return null;
+            }
+            low = Math.min(low, integer);
+            high = Math.max(high, integer);
+        }
+
+        // Sparse keys would leave most of the array empty.
+        final long span = high - low + 1;
+        return (span > 0 && span <= MAX_DENSE && span <= 4L * keys.size() + 16) ? new long[] { low, high } : null;
+    }
+}
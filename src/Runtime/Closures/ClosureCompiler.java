@@ -0,0 +1,924 @@
+package Runtime.Closures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Astre.*;
+import LexicalAnalysis.*;
+import Parsing.*;
+import Parsing.Expr.*;
+import Parsing.Expr.Set;
+import Parsing.Stmt.*;
+import Runtime.*;
+
+// Turns a resolved AST into a tree of lambdas, once, so running it is just a chain of direct calls. Everything a visit
+// would re-read from the node (the operator, the resolved depth and slot, constants, names) is captured up front.
+public class ClosureCompiler implements Expr.Visitor<ExprCode>, Stmt.Visitor<StmtCode> {
+    protected final Interpreter interpreter;
+
+    public ClosureCompiler(final Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    public StmtCode compile(final List<Stmt> statements) {
+        final StmtCode[] codes = new StmtCode[statements.size()];
+        for (int i = 0; i < codes.length; ++i) {
+            codes[i] = compile(statements.get(i));
+        }
+
+        return environment -> {
+            for (final StmtCode code : codes) {
+                final Object result = code.execute(environment);
+                if (result != StmtCode.NORMAL) {
+                    return result;
+                }
+            }
+            return StmtCode.NORMAL;
+        };
+    }
+
+    protected StmtCode compile(final Stmt stmt) {
+        final StmtCode code = stmt.accept(this);
+        if (!Astre.traceStmt) {
+            return code;
+        }
+
+        return environment -> {
+            final Object result = code.execute(environment);
+            if (result == StmtCode.NORMAL) {
+                Output.println((Object) null);
+            }
+            return result;
+        };
+    }
+
+    protected ExprCode compile(final Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public ExprCode visitAssignExpr(Assign expr) {
+        final ExprCode value = compile(expr.value);
+        final int depth = expr.depth, slot = expr.slot;
+        final Token name = expr.name;
+
+        if (depth == -1) {
+            final GlobalCache global = expr.global;
+            return environment -> {
+                final Object result = value.evaluate(environment);
+                interpreter.assignGlobal(name, global, result, environment);
+                return result;
+            };
+        }
+
+        return environment -> {
+            final Object result = value.evaluate(environment);
+            environment.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprCode visitBinaryExpr(Binary expr) {
+        final Token operator = expr.operator;
+
+        if (operator.type == TokenType.Derives || operator.type == TokenType.Implements) {
+            final ExprCode left = compile(expr.left);
+            final int typeId = AstreStruct.typeId((expr.right instanceof final Variable variable) ? variable.name.lexeme : null);
+            if (operator.type == TokenType.Derives) {
+                return environment -> Operators.derives(operator, left.evaluate(environment), typeId);
+            }
+            return environment -> Operators.implementsInterface(operator, left.evaluate(environment), typeId);
+        }
+
+        final ExprCode left = compile(expr.left);
+        final ExprCode right = compile(expr.right);
+
+        final ExprCode boxed = switch (operator.type) {
+            case Plus -> environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (l instanceof Double && r instanceof Double) {
+                    return (double) l + (double) r;
+                }
+                return Operators.binary(operator, l, r);
+            };
+            case Minus -> environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (l instanceof Double && r instanceof Double) {
+                    return (double) l - (double) r;
+                }
+                return Operators.binary(operator, l, r);
+            };
+            case Star -> environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (l instanceof Double && r instanceof Double) {
+                    return (double) l * (double) r;
+                }
+                return Operators.binary(operator, l, r);
+            };
+            case Slash -> environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (l instanceof Double && r instanceof Double) {
+                    return (double) l / (double) r;
+                }
+                return Operators.binary(operator, l, r);
+            };
+            case Less -> environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (l instanceof Double && r instanceof Double) {
+                    return (double) l < (double) r;
+                }
+                return Operators.binary(operator, l, r);
+            };
+            case LessEqual -> environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (l instanceof Double && r instanceof Double) {
+                    return (double) l <= (double) r;
+                }
+                return Operators.binary(operator, l, r);
+            };
+            case Greater -> environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (l instanceof Double && r instanceof Double) {
+                    return (double) l > (double) r;
+                }
+                return Operators.binary(operator, l, r);
+            };
+            case GreaterEqual -> environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (l instanceof Double && r instanceof Double) {
+                    return (double) l >= (double) r;
+                }
+                return Operators.binary(operator, l, r);
+            };
+            case EqualEqual -> environment -> Operators.equ(left.evaluate(environment), right.evaluate(environment));
+            case BangEqual -> environment -> !Operators.equ(left.evaluate(environment), right.evaluate(environment));
+            default -> environment -> Operators.binary(operator, left.evaluate(environment), right.evaluate(environment));
+        };
+
+        final NumberCode[] numbers = operands(expr.left, expr.right);
+        final ExprCode unboxed = (numbers == null) ? null : switch (operator.type) {
+            case Plus, Minus, Star, Slash, Modulo, Power -> {
+                final NumberCode number = number(expr);
+                yield environment -> number.evaluate(environment);
+            }
+            case Less -> environment -> numbers[0].evaluate(environment) < numbers[1].evaluate(environment);
+            case LessEqual -> environment -> numbers[0].evaluate(environment) <= numbers[1].evaluate(environment);
+            case Greater -> environment -> numbers[0].evaluate(environment) > numbers[1].evaluate(environment);
+            case GreaterEqual -> environment -> numbers[0].evaluate(environment) >= numbers[1].evaluate(environment);
+            default -> null;
+        };
+
+        final IntegerCode il = integer(expr.left), ir = integer(expr.right);
+        final ExprCode integral = (il == null || ir == null) ? null : switch (operator.type) {
+            case Plus, Minus, Star, Slash, Modulo, Power -> {
+                final IntegerCode integer = integer(expr);
+                yield environment -> integer.evaluate(environment);
+            }
+            case Less -> environment -> il.evaluate(environment) < ir.evaluate(environment);
+            case LessEqual -> environment -> il.evaluate(environment) <= ir.evaluate(environment);
+            case Greater -> environment -> il.evaluate(environment) > ir.evaluate(environment);
+            case GreaterEqual -> environment -> il.evaluate(environment) >= ir.evaluate(environment);
+            default -> null;
+        };
+        if (integral == null && unboxed == null) {
+            return boxed;
+        }
+        return new Unboxed(integral, unboxed, boxed);
+    }
+
+    // `expr` as arithmetic on unboxed doubles, or null unless it's made only of number literals, locals and arithmetic
+    // operators (which is what makes it safe to evaluate again when it runs into something that isn't a number). Only
+    // doubles are read: an integer throws `NotANumber` too, since the boxed version might keep the result an integer.
+    protected NumberCode number(final Expr expr) {
+        if (expr instanceof final Literal literal) {
+            if (!(literal.value instanceof final Double value)) {
+                return null;
+            }
+            final double constant = value;
+            return environment -> constant;
+        } else if (expr instanceof final Grouping grouping) {
+            return number(grouping.expression);
+        } else if (expr instanceof final Variable variable) {
+            if (variable.depth == -1) {
+                return null;
+            }
+            final int depth = variable.depth, slot = variable.slot;
+            return environment -> {
+                final Environment frame = environment.ancestor(depth);
+                if (!frame.holdsDouble(slot)) {
+                    throw NotANumber.INSTANCE;
+                }
+                return frame.numberAt(slot);
+            };
+        } else if (expr instanceof final Unary unary) {
+            final NumberCode right = (unary.operator.type == TokenType.Minus) ? number(unary.right) : null;
+            return (right != null) ? environment -> -right.evaluate(environment) : null;
+        }
+        if (!(expr instanceof final Binary binary)) {
+            return null;
+        }
+
+        final NumberCode[] operands = operands(binary.left, binary.right);
+        if (operands == null) {
+            return null;
+        }
+
+        final NumberCode left = operands[0], right = operands[1];
+        return switch (binary.operator.type) {
+            case Plus -> environment -> left.evaluate(environment) + right.evaluate(environment);
+            case Minus -> environment -> left.evaluate(environment) - right.evaluate(environment);
+            case Star -> environment -> left.evaluate(environment) * right.evaluate(environment);
+            case Slash -> environment -> left.evaluate(environment) / right.evaluate(environment);
+            case Modulo -> environment -> left.evaluate(environment) % right.evaluate(environment);
+            case Power -> environment -> Math.pow(left.evaluate(environment), right.evaluate(environment));
+            default -> null;
+        };
+    }
+
+    // Whether `visitBinaryExpr` runs the operands of a binary unboxed, as doubles or as integers.
+    protected boolean unboxes(final Expr left, final Expr right) {
+        return operands(left, right) != null || (integer(left) != null && integer(right) != null);
+    }
+
+    // Both operands of a binary as doubles. One of them can be integer arithmetic when the other is a double, since the
+    // result is a double either way. Null unless at least one side is a double.
+    private NumberCode[] operands(final Expr left, final Expr right) {
+        final NumberCode l = number(left), r = number(right);
+        if (l != null && r != null) {
+            // With a double on one side, a local on the other can be read whether it holds a double or an integer.
+            if (right instanceof final Variable variable && !(left instanceof Variable)) {
+                return new NumberCode[] { l, anyNumber(variable) };
+            } else if (left instanceof final Variable variable) {
+                return new NumberCode[] { anyNumber(variable), r };
+            }
+            return new NumberCode[] { l, r };
+        } else if (l != null) {
+            final NumberCode integer = widened(right);
+            return (integer != null) ? new NumberCode[] { l, integer } : null;
+        } else if (r != null) {
+            final NumberCode integer = widened(left);
+            return (integer != null) ? new NumberCode[] { integer, r } : null;
+        }
+        return null;
+    }
+
+    // Only called on locals, `number` never compiles a global.
+    private static NumberCode anyNumber(final Variable variable) {
+        final int depth = variable.depth, slot = variable.slot;
+        return environment -> {
+            final Environment frame = environment.ancestor(depth);
+            if (frame.holdsDouble(slot)) {
+                return frame.numberAt(slot);
+            } else if (frame.holdsInteger(slot)) {
+                return frame.integerAt(slot);
+            }
+            throw NotANumber.INSTANCE;
+        };
+    }
+
+    // Integer arithmetic that only has to end up as a double, so its last operator doesn't need to stay in the integers.
+    private NumberCode widened(final Expr expr) {
+        if (expr instanceof final Grouping grouping) {
+            return widened(grouping.expression);
+        } else if (expr instanceof final Binary binary) {
+            final IntegerCode left = integer(binary.left), right = integer(binary.right);
+            if (left != null && right != null) {
+                final NumberCode number = switch (binary.operator.type) {
+                    case Plus -> environment -> Operators.toDouble(Operators.add(left.evaluate(environment), right.evaluate(environment)));
+                    case Minus -> environment -> Operators.toDouble(Operators.subtract(left.evaluate(environment), right.evaluate(environment)));
+                    case Star -> environment -> Operators.toDouble(Operators.multiply(left.evaluate(environment), right.evaluate(environment)));
+                    case Slash -> environment -> Operators.toDouble(Operators.divide(left.evaluate(environment), right.evaluate(environment)));
+                    case Modulo -> environment -> Operators.toDouble(Operators.modulo(left.evaluate(environment), right.evaluate(environment)));
+                    case Power -> environment -> Operators.toDouble(Operators.power(left.evaluate(environment), right.evaluate(environment)));
+                    default -> null;
+                };
+                if (number != null) {
+                    return number;
+                }
+            }
+        }
+
+        final IntegerCode integer = integer(expr);
+        return (integer != null) ? environment -> integer.evaluate(environment) : null;
+    }
+
+    // The same for integer literals, locals and arithmetic operators, which leave the integers by throwing an
+    // `ArithmeticException` (an overflow, or a division with a remainder).
+    protected IntegerCode integer(final Expr expr) {
+        if (expr instanceof final Literal literal) {
+            if (!(literal.value instanceof final Long value)) {
+                return null;
+            }
+            final long constant = value;
+            return environment -> constant;
+        } else if (expr instanceof final Grouping grouping) {
+            return integer(grouping.expression);
+        } else if (expr instanceof final Variable variable) {
+            if (variable.depth == -1) {
+                return null;
+            }
+            final int depth = variable.depth, slot = variable.slot;
+            return environment -> {
+                final Environment frame = environment.ancestor(depth);
+                if (!frame.holdsInteger(slot)) {
+                    throw NotANumber.INSTANCE;
+                }
+                return frame.integerAt(slot);
+            };
+        } else if (expr instanceof final Unary unary) {
+            final IntegerCode right = (unary.operator.type == TokenType.Minus) ? integer(unary.right) : null;
+            return (right != null) ? environment -> Math.negateExact(right.evaluate(environment)) : null;
+        }
+        if (!(expr instanceof final Binary binary)) {
+            return null;
+        }
+
+        final IntegerCode left = integer(binary.left), right = integer(binary.right);
+        if (left == null || right == null) {
+            return null;
+        }
+
+        return switch (binary.operator.type) {
+            case Plus -> environment -> Math.addExact(left.evaluate(environment), right.evaluate(environment));
+            case Minus -> environment -> Math.subtractExact(left.evaluate(environment), right.evaluate(environment));
+            case Star -> environment -> Math.multiplyExact(left.evaluate(environment), right.evaluate(environment));
+            case Slash -> environment -> exact(Operators.divide(left.evaluate(environment), right.evaluate(environment)));
+            // Dividing by zero throws, and gets NaN from the boxed version.
+            case Modulo -> environment -> left.evaluate(environment) % right.evaluate(environment);
+            case Power -> environment -> exact(Operators.power(left.evaluate(environment), right.evaluate(environment)));
+            default -> null;
+        };
+    }
+
+    private static final ArithmeticException NOT_AN_INTEGER = new ArithmeticException();
+
+    private static long exact(final Object result) {
+        if (result instanceof final Long integer) {
+            return integer;
+        }
+        throw NOT_AN_INTEGER;
+    }
+
+    // Runs an expression on unboxed integers until an operand isn't one, then on unboxed doubles until an operand isn't
+    // a number at all, and boxed from then on. An integer overflow just runs the boxed version that once.
+    private static final class Unboxed implements ExprCode {
+        private static final int INTEGERS = 0, NUMBERS = 1, BOXED = 2;
+        // How often the doubles can miss before the expression stays boxed. A local that starts out as an integer and
+        // then becomes a double (`let s = 0;` before a loop) misses once.
+        private static final int MAX_MISSES = 8;
+
+        private final ExprCode integers, numbers, boxed;
+        private int tier, misses = 0;
+
+        // `integers` is null when the expression isn't integer arithmetic, `numbers` when no operand can be a double.
+        private Unboxed(final ExprCode integers, final ExprCode numbers, final ExprCode boxed) {
+            this.integers = integers;
+            this.numbers = numbers;
+            this.boxed = boxed;
+            this.tier = (integers != null) ? INTEGERS : NUMBERS;
+        }
+
+        @Override
+        public Object evaluate(final Environment environment) {
+            return switch (tier) {
+                case INTEGERS -> integers(environment);
+                case NUMBERS -> numbers(environment);
+                default -> boxed.evaluate(environment);
+            };
+        }
+
+        private Object integers(final Environment environment) {
+            try {
+                return integers.evaluate(environment);
+            } catch (final NotANumber notAnInteger) {
+                if (numbers == null) {
+                    tier = BOXED;
+                    return boxed.evaluate(environment);
+                }
+                tier = NUMBERS;
+                return numbers(environment);
+            } catch (final ArithmeticException overflow) {
+                return boxed.evaluate(environment);
+            }
+        }
+
+        private Object numbers(final Environment environment) {
+            try {
+                return numbers.evaluate(environment);
+            } catch (final NotANumber notANumber) {
+                if (++misses == MAX_MISSES) {
+                    tier = BOXED;
+                }
+                return boxed.evaluate(environment);
+            } catch (final ArithmeticException overflow) {
+                return boxed.evaluate(environment);
+            }
+        }
+    }
+
+    // `x = ...` or `let x = ...` on a local, storing an unboxed result straight into its slot. Goes through the same
+    // tiers as `Unboxed`.
+    private static final class UnboxedStore implements StmtCode {
+        private final IntegerCode integer;
+        private final NumberCode number;
+        private final int depth, slot;
+        private final StmtCode boxed;
+        private int tier, misses = 0;
+
+        // `depth` is 0 for a `let`.
+        private UnboxedStore(final IntegerCode integer, final NumberCode number, final int depth, final int slot, final StmtCode boxed) {
+            this.integer = integer;
+            this.number = number;
+            this.depth = depth;
+            this.slot = slot;
+            this.boxed = boxed;
+            this.tier = (integer != null) ? Unboxed.INTEGERS : Unboxed.NUMBERS;
+        }
+
+        @Override
+        public Object execute(final Environment environment) {
+            return switch (tier) {
+                case Unboxed.INTEGERS -> integer(environment);
+                case Unboxed.NUMBERS -> number(environment);
+                default -> boxed.execute(environment);
+            };
+        }
+
+        private Object integer(final Environment environment) {
+            final long result;
+            try {
+                result = integer.evaluate(environment);
+            } catch (final NotANumber notAnInteger) {
+                if (number == null) {
+                    tier = Unboxed.BOXED;
+                    return boxed.execute(environment);
+                }
+                tier = Unboxed.NUMBERS;
+                return number(environment);
+            } catch (final ArithmeticException overflow) {
+                return boxed.execute(environment);
+            }
+
+            environment.assignIntegerAt(depth, slot, result);
+            return StmtCode.NORMAL;
+        }
+
+        private Object number(final Environment environment) {
+            final double result;
+            try {
+                result = number.evaluate(environment);
+            } catch (final NotANumber notANumber) {
+                if (++misses == Unboxed.MAX_MISSES) {
+                    tier = Unboxed.BOXED;
+                }
+                return boxed.execute(environment);
+            } catch (final ArithmeticException overflow) {
+                return boxed.execute(environment);
+            }
+
+            environment.assignNumberAt(depth, slot, result);
+            return StmtCode.NORMAL;
+        }
+    }
+
+    @Override
+    public ExprCode visitCallExpr(Call expr) {
+        if (expr.callee instanceof final Get get) {
+            return invoke(expr, get);
+        }
+        if (expr.callee instanceof final Super sup) {
+            return invoke(expr, sup);
+        }
+
+        final ExprCode callee = compile(expr.callee);
+        final ExprCode[] arguments = new ExprCode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+
+        return environment -> {
+            final Object function = callee.evaluate(environment);
+            final Object[] args = Interpreter.arguments(function, arguments.length);
+            for (int i = 0; i < arguments.length; ++i) {
+                args[i] = arguments[i].evaluate(environment);
+            }
+
+            // Natives (`import` in particular) still look at the interpreter's current environment.
+            final Environment previous = interpreter.environment;
+            try {
+                interpreter.environment = environment;
+                return interpreter.call(expr, function, args);
+            } finally {
+                interpreter.environment = previous;
+            }
+        };
+    }
+
+    // `obj.method(...)` calls the method with `obj` as `self` rather than binding it first.
+    private ExprCode invoke(final Call expr, final Get get) {
+        final ExprCode obj = compile(get.obj);
+        final ExprCode[] arguments = new ExprCode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+        final Token name = get.name;
+        final PropertyCache cache = get.cache;
+
+        return environment -> {
+            if (!(obj.evaluate(environment) instanceof final AstreInstance instance)) {
+                throw new RuntimeError(name, "Only instances have properties");
+            }
+
+            final AstreFunction method = cache.method(instance, name.lexeme);
+            final Object callee = (method != null) ? method : cache.get(instance, name);
+            final Object[] args = Interpreter.arguments(callee, arguments.length);
+            for (int i = 0; i < arguments.length; ++i) {
+                args[i] = arguments[i].evaluate(environment);
+            }
+
+            if (method != null) {
+                return interpreter.invoke(expr, method, instance, args);
+            }
+
+            final Environment previous = interpreter.environment;
+            try {
+                interpreter.environment = environment;
+                return interpreter.call(expr, callee, args);
+            } finally {
+                interpreter.environment = previous;
+            }
+        };
+    }
+
+    // `super.method(...)`, likewise without binding.
+    private ExprCode invoke(final Call expr, final Super sup) {
+        final ExprCode[] arguments = new ExprCode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+        final int selfDepth = sup.selfDepth, selfSlot = sup.selfSlot;
+
+        return environment -> {
+            final AstreFunction method = Interpreter.superMethod(sup, environment);
+            final AstreInstance self = (AstreInstance) environment.getAt(selfDepth, selfSlot);
+            final Object[] args = Interpreter.arguments(method, arguments.length);
+            for (int i = 0; i < arguments.length; ++i) {
+                args[i] = arguments[i].evaluate(environment);
+            }
+            return interpreter.invoke(expr, method, self, args);
+        };
+    }
+
+    @Override
+    public ExprCode visitGetExpr(Get expr) {
+        final ExprCode obj = compile(expr.obj);
+        final Token name = expr.name;
+        final PropertyCache cache = expr.cache;
+
+        return environment -> {
+            if (obj.evaluate(environment) instanceof final AstreInstance instance) {
+                return cache.get(instance, name);
+            }
+            throw new RuntimeError(name, "Only instances have properties");
+        };
+    }
+
+    @Override
+    public ExprCode visitGroupingExpr(Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public ExprCode visitLiteralExpr(Literal expr) {
+        final Object value = expr.value;
+        return environment -> value;
+    }
+
+    // Both sides are always evaluated, same as the interpreter.
+    @Override
+    public ExprCode visitLogicalExpr(Logical expr) {
+        final ExprCode left = compile(expr.left);
+        final ExprCode right = compile(expr.right);
+
+        if (expr.operator.type == TokenType.Or) {
+            return environment -> {
+                final boolean l = Operators.isTruthy(left.evaluate(environment));
+                final boolean r = Operators.isTruthy(right.evaluate(environment));
+                return l || r;
+            };
+        }
+
+        return environment -> {
+            final boolean l = Operators.isTruthy(left.evaluate(environment));
+            final boolean r = Operators.isTruthy(right.evaluate(environment));
+            return l && r;
+        };
+    }
+
+    @Override
+    public ExprCode visitSetExpr(Set expr) {
+        final ExprCode obj = compile(expr.obj);
+        final ExprCode value = compile(expr.value);
+        final Token name = expr.name;
+        final PropertyCache cache = expr.cache;
+
+        return environment -> {
+            if (obj.evaluate(environment) instanceof final AstreInstance instance) {
+                return cache.set(instance, name, value.evaluate(environment));
+            }
+            throw new RuntimeError(name, "Only instances have fields.");
+        };
+    }
+
+    @Override
+    public ExprCode visitSuperExpr(Super expr) {
+        final int selfDepth = expr.selfDepth, selfSlot = expr.selfSlot;
+
+        return environment -> {
+            final AstreFunction function = Interpreter.superMethod(expr, environment);
+            return function.bind((AstreInstance) environment.getAt(selfDepth, selfSlot));
+        };
+    }
+
+    @Override
+    public ExprCode visitSelfExpr(Self expr) {
+        return variable(expr.keyword, expr.depth, expr.slot, new GlobalCache());
+    }
+
+    @Override
+    public ExprCode visitUnaryExpr(Unary expr) {
+        final ExprCode right = compile(expr.right);
+        final Token operator = expr.operator;
+
+        if (operator.type == TokenType.Bang) {
+            return environment -> !Operators.isTruthy(right.evaluate(environment));
+        }
+
+        return environment -> {
+            final Object value = right.evaluate(environment);
+            return (value instanceof Double) ? -(double) value : Operators.unary(operator, value);
+        };
+    }
+
+    @Override
+    public ExprCode visitVariable(Variable expr) {
+        return variable(expr.name, expr.depth, expr.slot, expr.global);
+    }
+
+    private ExprCode variable(final Token name, final int depth, final int slot, final GlobalCache global) {
+        return switch (depth) {
+            case -1 -> environment -> interpreter.lookupGlobal(name, global, environment);
+            case 0 -> environment -> environment.getAt(0, slot);
+            case 1 -> environment -> environment.enclosing.getAt(0, slot);
+            default -> environment -> environment.getAt(depth, slot);
+        };
+    }
+
+    @Override
+    public StmtCode visitBlockStmt(Block stmt) {
+        final StmtCode body = compile(stmt.statements);
+        if (stmt.scope == null) {
+            return body;
+        }
+        return environment -> body.execute(Environment.enter(environment, stmt));
+    }
+
+    @Override
+    public StmtCode visitStructStmt(Struct stmt) {
+        final ExprCode superStruct = (stmt.superStruct != null) ? compile(stmt.superStruct) : null;
+        for (final FunctionStmt method : stmt.methods) {
+            method.code = compile(method.body);
+        }
+
+        return environment -> {
+            interpreter.defineStruct(stmt, (superStruct != null) ? superStruct.evaluate(environment) : null, environment);
+            return StmtCode.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitExpressionStmt(Expression stmt) {
+        final ExprCode expression = compile(stmt.expression);
+        final StmtCode code = environment -> {
+            expression.evaluate(environment);
+            return StmtCode.NORMAL;
+        };
+
+        if (stmt.expression instanceof final Assign assign && assign.depth != -1) {
+            final IntegerCode integer = integer(assign.value);
+            final NumberCode number = number(assign.value);
+            if (integer != null || number != null) {
+                return new UnboxedStore(integer, number, assign.depth, assign.slot, code);
+            }
+        }
+        return code;
+    }
+
+    @Override
+    public StmtCode visitFunctionStmt(FunctionStmt stmt) {
+        stmt.code = compile(stmt.body);
+        return environment -> {
+            environment.declare(stmt.name, Modifier.Nullable, stmt.name, stmt.slot, new AstreFunction(stmt, environment));
+            return StmtCode.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitIfStmt(If stmt) {
+        final ExprCode condition = compile(stmt.condition);
+        final StmtCode thenBranch = compile(stmt.thenBranch);
+
+        if (stmt.elseBranch == null) {
+            return environment -> Operators.isTruthy(condition.evaluate(environment)) ? thenBranch.execute(environment) : StmtCode.NORMAL;
+        }
+
+        final StmtCode elseBranch = compile(stmt.elseBranch);
+        return environment -> Operators.isTruthy(condition.evaluate(environment)) ? thenBranch.execute(environment) : elseBranch.execute(environment);
+    }
+
+    @Override
+    public StmtCode visitPrintStmt(Print stmt) {
+        final ExprCode expression = compile(stmt.expression);
+        final boolean newLine = stmt.newLine;
+
+        return environment -> {
+            Output.printValue(expression.evaluate(environment));
+            if (newLine) {
+                Output.println();
+            }
+            return StmtCode.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitReturnStmt(ReturnStmt stmt) {
+        if (stmt.value == null) {
+            return environment -> null;
+        }
+        final ExprCode value = compile(stmt.value);
+        return value::evaluate;
+    }
+
+    @Override
+    public StmtCode visitLetStmt(Let stmt) {
+        final ExprCode init = (stmt.init != null) ? compile(stmt.init) : null;
+        final StmtCode code = environment -> {
+            environment.declare(stmt.keyword, stmt.mod, stmt.name, stmt.slot, (init != null) ? init.evaluate(environment) : null);
+            return StmtCode.NORMAL;
+        };
+
+        if (stmt.init != null && stmt.slot != -1) {
+            final IntegerCode integer = integer(stmt.init);
+            final NumberCode number = number(stmt.init);
+            if (integer != null || number != null) {
+                return new UnboxedStore(integer, number, 0, stmt.slot, code);
+            }
+        }
+        return code;
+    }
+
+    @Override
+    public StmtCode visitWhileStmt(While stmt) {
+        final ExprCode condition = compile(stmt.condition);
+        final StmtCode body = compile(stmt.body);
+        final String[] scope = stmt.scope;
+
+        return environment -> {
+            final Environment loop = Environment.enter(environment, scope);
+            while (Operators.isTruthy(condition.evaluate(loop))) {
+                final Object result = body.execute(loop);
+                if (result != StmtCode.NORMAL) {
+                    return result;
+                }
+            }
+            return StmtCode.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitForStmt(For stmt) {
+        final StmtCode init = (stmt.init != null) ? compile(stmt.init) : null;
+        final ExprCode condition = (stmt.condition != null) ? compile(stmt.condition) : null;
+        final StmtCode inc = (stmt.inc != null) ? compile(stmt.inc) : null;
+        final StmtCode body = compile(stmt.body);
+        final String[] scope = stmt.scope;
+
+        return environment -> {
+            final Environment loop = Environment.enter(environment, scope);
+            if (init != null) {
+                final Object result = init.execute(loop);
+                if (result != StmtCode.NORMAL) {
+                    return result;
+                }
+            }
+
+            while (condition == null || Operators.isTruthy(condition.evaluate(loop))) {
+                final Object result = body.execute(loop);
+                if (result != StmtCode.NORMAL) {
+                    return result;
+                }
+                if (inc != null) {
+                    inc.execute(loop);
+                }
+            }
+            return StmtCode.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitMatchStmt(Match stmt) {
+        final ExprCode matchOn = compile(stmt.matchOn);
+        final StmtCode[] cases = new StmtCode[stmt.possibilities.size()];
+        for (int i = 0; i < cases.length; ++i) {
+            cases[i] = compile(stmt.possibilities.get(i).toRun);
+        }
+        final StmtCode otherwise = (stmt.ifAllElseFails != null) ? compile(stmt.ifAllElseFails) : environment -> StmtCode.NORMAL;
+
+        if (stmt.table != null) {
+            final CaseTable table = stmt.table;
+            return environment -> {
+                final int index = table.indexOf(matchOn.evaluate(environment));
+                return (index != -1) ? cases[index].execute(environment) : otherwise.execute(environment);
+            };
+        }
+
+        final ExprCode[] possibilities = new ExprCode[cases.length];
+        for (int i = 0; i < possibilities.length; ++i) {
+            possibilities[i] = compile(stmt.possibilities.get(i).possibility);
+        }
+
+        return environment -> {
+            final Object toSwitchOn = matchOn.evaluate(environment);
+            for (int i = 0; i < possibilities.length; ++i) {
+                if (Operators.equ(toSwitchOn, possibilities[i].evaluate(environment))) {
+                    return cases[i].execute(environment);
+                }
+            }
+            return otherwise.execute(environment);
+        };
+    }
+
+    @Override
+    public StmtCode visitInterfaceStmt(InterfaceStmt stmt) {
+        final Token[] names = stmt.methods.keySet().toArray(new Token[0]);
+        final ExprCode[] arities = new ExprCode[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            arities[i] = compile(stmt.methods.get(names[i]));
+        }
+
+        return environment -> {
+            environment.declare(stmt.name, Modifier.Nullable, stmt.name, stmt.slot, null);
+
+            final Map<String, Integer> methods = new HashMap<>();
+            for (int i = 0; i < names.length; ++i) {
+                methods.put(names[i].lexeme, ((Number) arities[i].evaluate(environment)).intValue());
+            }
+
+            environment.initialize(stmt.name, stmt.slot, new AstreInterface(stmt.name.lexeme, methods));
+            return StmtCode.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitRangeStmt(RangeStmt stmt) {
+        final ExprCode start = stmt.oneArg ? null : compile(stmt.start);
+        final ExprCode stop = compile(stmt.stop);
+        final ExprCode step = stmt.oneArg ? null : compile(stmt.step);
+        final StmtCode body = compile(stmt.body);
+        final String[] scope = stmt.scope;
+        final Token iterator = stmt.iterator;
+
+        return environment -> {
+            final Environment loop = new Environment(environment, scope);
+            loop.defineAt(iterator, Modifier.Nullable, 0, null);
+
+            final Object first = (start != null) ? start.evaluate(loop) : (Object) 0L;
+            final Object last = stop.evaluate(loop);
+            final Object increment = (step != null) ? step.evaluate(loop) : (Object) 1L;
+
+            if (first instanceof Long && last instanceof Long && increment instanceof Long) {
+                for (long i = (long) first; i < (long) last; i += (long) increment) {
+                    loop.assignIntegerAt(0, 0, i);
+                    final Object result = body.execute(loop);
+                    if (result != StmtCode.NORMAL) {
+                        return result;
+                    }
+                }
+                return StmtCode.NORMAL;
+            }
+
+            final double to = Operators.toDouble(last), by = Operators.toDouble(increment);
+            for (double i = Operators.toDouble(first); i < to; i += by) {
+                loop.assignNumberAt(0, 0, i);
+                final Object result = body.execute(loop);
+                if (result != StmtCode.NORMAL) {
+                    return result;
+                }
+            }
+            return StmtCode.NORMAL;
+        };
+    }
+}
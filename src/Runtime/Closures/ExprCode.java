@@ -0,0 +1,9 @@
+package Runtime.Closures;
+
+import Runtime.Environment;
+
+// An expression compiled by `ClosureCompiler`, evaluated in the environment it's handed.
+@FunctionalInterface
+public interface ExprCode {
+    Object evaluate(Environment environment);
+}
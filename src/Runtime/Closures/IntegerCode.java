@@ -0,0 +1,9 @@
+package Runtime.Closures;
+
+import Runtime.Environment;
+
+// Integer arithmetic compiled by `ClosureCompiler` to run on unboxed longs, under the same rules as `NumberCode`.
+@FunctionalInterface
+public interface IntegerCode {
+    long evaluate(Environment environment);
+}
@@ -0,0 +1,10 @@
+package Runtime.Closures;
+
+// Thrown by a `NumberCode` that read something other than a number.
+public final class NotANumber extends RuntimeException {
+    public static final NotANumber INSTANCE = new NotANumber();
+
+    private NotANumber() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,10 @@
+package Runtime.Closures;
+
+import Runtime.Environment;
+
+// Arithmetic compiled by `ClosureCompiler` to run on unboxed doubles. It only ever reads literals and locals, so when an
+// operand turns out not to be a number (`NotANumber`) the expression can just be evaluated again the boxed way.
+@FunctionalInterface
+public interface NumberCode {
+    double evaluate(Environment environment);
+}
@@ -0,0 +1,12 @@
+package Runtime.Closures;
+
+import Runtime.Environment;
+
+// A statement compiled by `ClosureCompiler`. Running it returns `NORMAL`, or the value of a `return` that should
+// propagate out to the enclosing function.
+@FunctionalInterface
+public interface StmtCode {
+    Object NORMAL = new Object();
+
+    Object execute(Environment environment);
+}
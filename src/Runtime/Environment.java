@@ -1,45 +1,211 @@
 package Runtime;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import LexicalAnalysis.*;
+import Parsing.Stmt;
 import Parsing.Stmt.Modifier;
 
 public class Environment {
-    private final Map<String, Object> values = new HashMap<>();
-    private final Map<String, Modifier> modifiers = new HashMap<>();
+    public static final String[] SUPER_SCOPE = { "super" };
+
+    // Returned by `lookup` when no environment in the chain binds the name.
+    public static final Object UNDEFINED = new Object();
+    private static final String[] NO_SLOTS = {};
+
+    // Stored in a slot whose `let` hasn't run yet. Reading the slot gives `nothing`; looking the name up skips it.
+    private static final Object UNSET = new Object();
+
+    // Stored in a slot whose value is the unboxed number at the same index of `numbers` (`integers`).
+    private static final Object NUMBER = new Object(), INTEGER = new Object();
+
+    // Locals the resolver knows about live in `slots`, indexed by the slot it assigned them.
+    private final String[] names;
+    private final Object[] slots;
+    private double[] numbers;
+    private long[] integers;
+
+    // Bindings only known by name (globals, libraries imported at runtime), created on first use.
+    private Map<String, Cell> cells;
     public final Environment enclosing;
 
     public Environment() {
-        this.enclosing = null;
+        this(null, NO_SLOTS);
     }
 
     public Environment(Environment enclosing) {
+        this(enclosing, NO_SLOTS);
+    }
+
+    public Environment(final Environment enclosing, final String[] names) {
+        this.enclosing = enclosing;
+        this.names = names;
+        this.slots = new Object[names.length];
+        Arrays.fill(slots, UNSET);
+    }
+
+    // A function's frame, whose first slots are the arguments. `arguments` becomes the slot array itself when the caller
+    // sized it for the whole scope (see `frame`).
+    public Environment(final Environment enclosing, final String[] names, final Object[] arguments) {
         this.enclosing = enclosing;
+        this.names = names;
+        if (arguments.length == names.length) {
+            this.slots = arguments;
+        } else {
+            this.slots = Arrays.copyOf(arguments, names.length);
+            if (arguments.length < names.length) {
+                Arrays.fill(slots, arguments.length, names.length, UNSET);
+            }
+        }
+    }
+
+    // An array for `count` arguments that can become a frame of `size` slots.
+    public static Object[] frame(final int size, final int count) {
+        final Object[] slots = new Object[size];
+        Arrays.fill(slots, count, size, UNSET);
+        return slots;
+    }
+
+    // The environment a scope runs in: `enclosing` itself when the resolver found it declares nothing (`scope` is null).
+    public static Environment enter(final Environment enclosing, final String[] scope) {
+        return (scope != null) ? new Environment(enclosing, scope) : enclosing;
+    }
+
+    public static Environment enter(final Environment enclosing, final Stmt.Block block) {
+        if (!block.reuseFrame) {
+            return enter(enclosing, block.scope);
+        }
+
+        Environment frame = block.frame;
+        if (frame == null || frame.enclosing != enclosing) {
+            frame = block.frame = new Environment(enclosing, block.scope);
+        } else {
+            // Every pass starts out with nothing declared, same as a new environment would.
+            Arrays.fill(frame.slots, UNSET);
+        }
+        return frame;
     }
 
-    public Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        } else if (enclosing != null) {
-            return enclosing.get(name);
+    public Object lookup(final String name) {
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            if (environment.cells != null) {
+                final Cell cell = environment.cells.get(name);
+                if (cell != null) {
+                    return cell.value;
+                }
+            }
+
+            final int slot = environment.slotOf(name);
+            if (slot != -1 && environment.slots[slot] != UNSET) {
+                return environment.valueAt(slot);
+            }
         }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return UNDEFINED;
     }
 
+    // Redefining a name reuses its cell, so sites that cached it see the new value.
     public void define(Token keyword, Modifier modifier, String name, Object value) {
-        values.put(name, value);
-        modifiers.put(name, modifier);
+        if (cells == null) {
+            cells = new HashMap<>();
+        }
+
+        final Cell cell = cells.computeIfAbsent(name, unused -> new Cell());
+        cell.value = value;
+        cell.modifier = modifier;
+
+        checkDefinition(keyword, modifier, value);
+    }
+
+    // The binding for `name` made by `define` in this environment (not its enclosing ones), or null.
+    public Cell cell(final String name) {
+        return (cells != null) ? cells.get(name) : null;
+    }
+
+    public void defineAt(final Token keyword, final Modifier modifier, final int slot, final Object value) {
+        slots[slot] = value;
+
+        checkDefinition(keyword, modifier, value);
+    }
+
+    // Defines a local in the slot the resolver gave it, or by name when the resolver left it unresolved (`slot` is -1).
+    public void declare(final Token keyword, final Modifier modifier, final Token name, final int slot, final Object value) {
+        if (slot != -1) {
+            defineAt(keyword, modifier, slot, value);
+        } else {
+            define(keyword, modifier, name.lexeme, value);
+        }
+    }
 
+    public void initialize(final Token name, final int slot, final Object value) {
+        if (slot != -1) {
+            slots[slot] = value;
+        } else {
+            assign(name, value);
+        }
+    }
+
+    private static void checkDefinition(final Token keyword, final Modifier modifier, final Object value) {
         if ((modifier != Modifier.Nullable && modifier != Modifier.Both) && value == null) {
             throw new RuntimeError(keyword, "Cannot assign `nothing` to variable that doesn't accept the `nothing` value (put a `?` after `let` to allow it).");
         }
     }
 
-    public Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    public Object getAt(final int distance, final int slot) {
+        return ancestor(distance).valueAt(slot);
+    }
+
+    private Object valueAt(final int slot) {
+        final Object value = slots[slot];
+        if (value == NUMBER) {
+            return numbers[slot];
+        } else if (value == INTEGER) {
+            return integers[slot];
+        } else if (value == UNSET) {
+            return null;
+        }
+        return value;
+    }
+
+    // Whether `numberAt` can read the slot: a double, unboxed or not. Integers are read with `integerAt`.
+    public boolean holdsDouble(final int slot) {
+        final Object value = slots[slot];
+        return value == NUMBER || value instanceof Double;
+    }
+
+    public double numberAt(final int slot) {
+        return (slots[slot] == NUMBER) ? numbers[slot] : (double) slots[slot];
+    }
+
+    public boolean holdsInteger(final int slot) {
+        final Object value = slots[slot];
+        return value == INTEGER || value instanceof Long;
+    }
+
+    public long integerAt(final int slot) {
+        final Object value = slots[slot];
+        return (value == INTEGER) ? integers[slot] : (long) value;
+    }
+
+    // Stores `value` unboxed; reading it as an object boxes it again.
+    public void assignNumberAt(final int distance, final int slot, final double value) {
+        final Environment environment = ancestor(distance);
+        if (environment.numbers == null) {
+            environment.numbers = new double[environment.slots.length];
+        }
+        environment.slots[slot] = NUMBER;
+        environment.numbers[slot] = value;
+    }
+
+    public void assignIntegerAt(final int distance, final int slot, final long value) {
+        final Environment environment = ancestor(distance);
+        if (environment.integers == null) {
+            environment.integers = new long[environment.slots.length];
+        }
+        environment.slots[slot] = INTEGER;
+        environment.integers[slot] = value;
     }
 
     public Environment ancestor(int distance) {
@@ -51,25 +217,58 @@ public class Environment {
         return environment;
     }
 
-    public void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            if (modifiers.get(name.lexeme) == Modifier.Constant || modifiers.get(name.lexeme) == Modifier.Both) {
-                throw new RuntimeError(name, "Cannot assign variable which was declared constant");
+    public boolean assign(Token name, Object value) {
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            final Cell cell = environment.cell(name.lexeme);
+            if (cell != null) {
+                cell.assign(name, value);
+                return true;
             }
-            if (modifiers.get(name.lexeme) != Modifier.Nullable && value == null) {
-                throw new RuntimeError(name, "Cannot assign variable which doesn't accept `nothing` values (put `?` after `let` to allow it).");
+
+            // The resolver has already rejected assignments to constant locals.
+            final int slot = environment.slotOf(name.lexeme);
+            if (slot != -1 && environment.slots[slot] != UNSET) {
+                environment.slots[slot] = value;
+                return true;
             }
-            values.put(name.lexeme, value);
-            return;
-        } else if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
         }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return false;
+    }
+
+    private static void checkAssignment(final Token name, final Modifier modifier, final Object value) {
+        if (modifier == Modifier.Constant || modifier == Modifier.Both) {
+            throw new RuntimeError(name, "Cannot assign variable which was declared constant");
+        }
+        if (value == null && modifier != Modifier.Nullable) {
+            throw new RuntimeError(name, "Cannot assign variable which doesn't accept `nothing` values (put `?` after `let` to allow it).");
+        }
+    }
+
+    public void assignAt(final int distance, final int slot, final Object value) {
+        ancestor(distance).slots[slot] = value;
     }
 
-    public void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    private int slotOf(final String name) {
+        for (int i = 0; i < names.length; ++i) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static final class Cell {
+        private Object value;
+        private Modifier modifier;
+
+        public Object value() {
+            return value;
+        }
+
+        public void assign(final Token name, final Object value) {
+            checkAssignment(name, modifier, value);
+            this.value = value;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,8 @@
+package Runtime;
+
+// The global a variable site found, kept so later runs read its cell instead of looking the name up. Only names found
+// in the globals are cached: those are searched first and never removed, and redefining one reuses its cell, so a
+// cached cell never goes stale.
+public final class GlobalCache {
+    Environment.Cell cell = null;
+}
@@ -12,17 +12,28 @@ import Parsing.Expr.*;
 import Parsing.Expr.Set;
 import Parsing.Stmt.*;
 import LexicalAnalysis.*;
+import Runtime.Closures.ClosureCompiler;
+import Runtime.Closures.StmtCode;
+import Runtime.Nodes.UnexpectedResult;
 import Runtime.StdLib.IO;
 import Runtime.StdLib.ListLib;
 import Runtime.StdLib.Math;
 import Runtime.StdLib.Rand;
+import Runtime.Tracing.LoopTrace;
+import Runtime.Tracing.TraceRecorder;
 
-import static java.lang.Math.pow;
-
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     public Environment globals = new Environment();
     public Environment environment = globals;
-    public final Map<Expr, Integer> locals = new HashMap<>();
+
+    // How unresolved variables ended up being found, reported with `-tracelookups`.
+    public long globalLookups = 0, fallbackLookups = 0;
+
+    // Run programs through the closure compiler instead of walking the tree (`-closures`).
+    public boolean compileClosures = false;
+
+    // Set while one iteration of a hot loop is being recorded.
+    private TraceRecorder recorder = null;
     private final Map<String, Consumer<Interpreter>> stdLibraries = new HashMap<>();
 
     public final Interpreter self = this;
@@ -38,7 +49,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             public int arity() { return 0; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
+            public Object call(Interpreter interpreter, Object[] args) {
                 return (double)System.currentTimeMillis() / 1000.0;
             }
 
@@ -50,8 +61,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             public int arity() { return 1; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                final String toImport = (String)args.get(0);
+            public Object call(Interpreter interpreter, Object[] args) {
+                final String toImport = (String)args[0];
 
                 if (stdLibraries.get(toImport) == null) {
                     System.err.println("Couldn't import library: " + toImport + " because it was not defined in the Astre-Standard-Library");
@@ -71,9 +82,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             public int arity() { return 1; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                final double temp = (Double)args.get(0);
-                System.exit((int)temp);
+            public Object call(Interpreter interpreter, Object[] args) {
+                System.exit(((Number)args[0]).intValue());
                 return null; // Never here.
             }
 
@@ -85,10 +95,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             public int arity() { return 1; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                final double time = (Double)args.get(0);
+            public Object call(Interpreter interpreter, Object[] args) {
+                final long time = ((Number)args[0]).longValue();
                 try {
-                    TimeUnit.MILLISECONDS.sleep((long) time);
+                    TimeUnit.MILLISECONDS.sleep(time);
                 } catch (Exception exception) {
                     exception.printStackTrace();
                     System.exit(1);
@@ -104,9 +114,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             public int arity() { return 2; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                final String str = (String)args.get(0);
-                final int index = (int)(double)args.get(1);
+            public Object call(Interpreter interpreter, Object[] args) {
+                final String str = (String)args[0];
+                final int index = ((Number)args[1]).intValue();
 
                 return str.charAt(index);
             }
@@ -119,8 +129,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             public int arity() { return 1; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                final String path = (String)args.get(0);
+            public Object call(Interpreter interpreter, Object[] args) {
+                final String path = (String)args[0];
                 try {
                     final byte[] bytes = Files.readAllBytes(Paths.get(path));
                     return new String(bytes);
@@ -140,6 +150,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     public void interpret(List<Stmt> ast) {
         try {
+            if (compileClosures) {
+                new ClosureCompiler(this).compile(ast).execute(environment);
+                return;
+            }
+
             for (final Stmt syntaxNode: ast) {
                 execute(syntaxNode);
             }
@@ -148,44 +163,55 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    private void execute(Stmt stmt) {
-        final Object value = stmt.accept(this);
-        if (Astre.traceStmt) {
-            System.out.println(value);
+    // Returns `StmtCode.NORMAL`, or the value of a `return` that has to propagate out to the enclosing function.
+    private Object execute(Stmt stmt) {
+        final Object result = stmt.accept(this);
+        if (Astre.traceStmt && result == StmtCode.NORMAL) {
+            Output.println((Object) null);
         }
+        return result;
     }
 
-    public void resolve(final Expr expr, final int depth) {
-        locals.put(expr, depth);
-    }
-
-    public void executeBlock(List<Stmt> body, Environment environment) {
+    public Object executeBlock(List<Stmt> body, Environment environment) {
         final Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for (final Stmt statement : body) {
-                execute(statement);
+                final Object result = execute(statement);
+                if (result != StmtCode.NORMAL) {
+                    return result;
+                }
             }
         } finally {
             this.environment = previous;
         }
+        return StmtCode.NORMAL;
     }
 
-    private void executeWhile(While stmt, Environment environment) {
+    private Object executeWhile(While stmt, Environment environment) {
         final Environment previous = this.environment;
         try {
             this.environment = environment;
 
-            while (isTruthy(evaluate(stmt.condition))) {
-                execute(stmt.body);
+            if (stmt.trace == null) {
+                stmt.trace = new LoopTrace(stmt.body, stmt.condition, null);
+            }
+            final LoopTrace trace = stmt.trace;
+
+            while (loopCondition(trace, stmt.condition)) {
+                final Object result = iterate(trace, stmt.body);
+                if (result != StmtCode.NORMAL) {
+                    return result;
+                }
             }
         } finally {
             this.environment = previous;
         }
+        return StmtCode.NORMAL;
     }
 
-    private void executeFor(For stmt, Environment environment) {
+    private Object executeFor(For stmt, Environment environment) {
         final Environment previous = this.environment;
         try {
             this.environment = environment;
@@ -194,140 +220,129 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 execute(stmt.init);
             }
 
-            while (stmt.condition == null || isTruthy(evaluate(stmt.condition))) {
-                execute(stmt.body);
+            if (stmt.trace == null) {
+                stmt.trace = new LoopTrace(stmt.body, stmt.condition, stmt.inc);
+            }
+            final LoopTrace trace = stmt.trace;
+
+            while (stmt.condition == null || loopCondition(trace, stmt.condition)) {
+                final Object result = iterate(trace, stmt.body);
+                if (result != StmtCode.NORMAL) {
+                    return result;
+                }
+
                 if (stmt.inc != null) {
-                    execute(stmt.inc);
+                    if (trace.increment != null) {
+                        trace.increment.execute(this.environment);
+                    } else {
+                        execute(stmt.inc);
+                    }
                 }
             }
         } finally {
             this.environment = previous;
         }
+        return StmtCode.NORMAL;
     }
 
-    private void executeRange(RangeStmt stmt, Environment environment) {
+    private Object executeRange(RangeStmt stmt, Environment environment) {
         final Environment previous = this.environment;
         try {
             this.environment = environment;
 
-            this.environment.define(stmt.iterator, Modifier.Nullable, stmt.iterator.lexeme, null);
+            // The iterator is always the first slot of the range's scope. It's a copy of the counter, stored unboxed, so
+            // the body assigning to it doesn't change how often the loop runs.
+            this.environment.defineAt(stmt.iterator, Modifier.Nullable, 0, null);
+
+            if (stmt.trace == null) {
+                stmt.trace = new LoopTrace(stmt.body, null, null);
+            }
+            final LoopTrace trace = stmt.trace;
+
+            final Object start = stmt.oneArg ? (Object) 0L : evaluate(stmt.start);
+            final Object stop = evaluate(stmt.stop);
+            final Object step = stmt.oneArg ? (Object) 1L : evaluate(stmt.step);
 
-            if (stmt.oneArg) {
-                final double stop = (double)evaluate(stmt.stop);
-                for (double i = 0; i < stop; ++i) {
-                    this.environment.assign(stmt.iterator, i);
-                    execute(stmt.body);
+            if (start instanceof Long && stop instanceof Long && step instanceof Long) {
+                final long to = (long) stop, by = (long) step;
+                for (long i = (long) start; i < to; i += by) {
+                    this.environment.assignIntegerAt(0, 0, i);
+                    final Object result = iterate(trace, stmt.body);
+                    if (result != StmtCode.NORMAL) {
+                        return result;
+                    }
                 }
-            } else {
-                final double start = (double)evaluate(stmt.start);
-                final double stop = (double)evaluate(stmt.stop);
-                final double step = (double)evaluate(stmt.step);
-
-                for (double i = start; i < stop; i += step) {
-                    this.environment.assign(stmt.iterator, i);
-                    execute(stmt.body);
+                return StmtCode.NORMAL;
+            }
+
+            final double to = Operators.toDouble(stop), by = Operators.toDouble(step);
+            for (double i = Operators.toDouble(start); i < to; i += by) {
+                this.environment.assignNumberAt(0, 0, i);
+                final Object result = iterate(trace, stmt.body);
+                if (result != StmtCode.NORMAL) {
+                    return result;
                 }
             }
         } finally {
             this.environment = previous;
         }
+        return StmtCode.NORMAL;
     }
 
-    @Override
-    public Object visitBinaryExpr(final Binary expr) {
-        final Object left = evaluate(expr.left);
-
-        if (expr.operator.type == TokenType.Derives) {
-            if (!(left instanceof AstreInstance)) {
-                throw new RuntimeError(expr.operator, "`derives` can only be used on an instance");
-            }
-            if (!(expr.right instanceof Variable)) {
-                throw new RuntimeError(expr.operator, "`derives` cannot be compared to a non-identifier");
-            }
-            final String name = ((Variable)expr.right).name.lexeme;
-
-            AstreStruct struct = ((AstreInstance)left).struct;
-            while (!Objects.equals(struct.name, name) && struct.superStruct != null) {
-                struct = struct.superStruct;
-            }
+    private boolean loopCondition(final LoopTrace trace, final Expr condition) {
+        if (trace.condition != null) {
+            return Operators.isTruthy(trace.condition.evaluate(environment));
+        }
+        return evaluateCondition(condition);
+    }
 
-            return struct.name.equals(name);
-        } else if (expr.operator.type == TokenType.Implements) {
-            if (!(left instanceof AstreInstance)) {
-                throw new RuntimeError(expr.operator, "`derives` can only be used on an instance");
-            }
-            if (!(expr.right instanceof Variable)) {
-                throw new RuntimeError(expr.operator, "`derives` cannot be compared to a non-identifier");
-            }
-            final String name = ((Variable)expr.right).name.lexeme;
+    // Runs one iteration of a loop body: the trace once there is one, otherwise the tree, recording it when the loop
+    // has just become hot.
+    private Object iterate(final LoopTrace trace, final Stmt body) {
+        if (trace.body != null) {
+            return trace.body.execute(environment);
+        }
 
-            AstreStruct struct = ((AstreInstance)left).struct;
-            while ((struct.superInterface == null || !Objects.equals(struct.superInterface.name, name)) && struct.superStruct != null) {
-                struct = struct.superStruct;
-            }
+        final TraceRecorder recording = (recorder == null) ? trace.backEdge() : null;
+        if (recording == null) {
+            return execute(body);
+        }
 
-            return struct.superInterface != null && struct.superInterface.name.equals(name);
+        final Object result;
+        try {
+            recorder = recording;
+            result = execute(body);
+        } finally {
+            recorder = null;
         }
+        trace.compile(this);
+        return result;
+    }
 
-        final Object right = evaluate(expr.right);
+    // Runs a statement a trace left to the interpreter, in the environment the trace was running in.
+    public Object executeOffTrace(final Stmt stmt, final Environment environment) {
+        if (stmt == null) {
+            return StmtCode.NORMAL;
+        }
 
-        switch (expr.operator.type) {
-            case Plus -> {
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
-                } else if (left instanceof String && right instanceof String) {
-                    return left + (String) right;
-                }
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings");
-            }
-            case Minus -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
-            }
-            case Star -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
-            }
-            case Slash -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left / (double) right;
-            }
-            case Modulo -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left % (double) right;
-            }
-            case Power -> {
-                checkNumberOperands(expr.operator, left, right);
-                return pow((double) left, (double) right);
-            }
-            case Greater -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
-            }
-            case GreaterEqual -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
-            }
-            case Less -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
-            }
-            case LessEqual -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
-            }
-            case BangEqual -> {
-                return !equ(left, right);
-            }
-            case EqualEqual -> {
-                return equ(left, right);
-            }
-            default -> {
-            }
+        final Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            return execute(stmt);
+        } finally {
+            this.environment = previous;
         }
+    }
 
-        // Never here
-        return null;
+    @Override
+    public Object visitBinaryExpr(final Binary expr) {
+        if (recorder != null && expr.operator.type != TokenType.Derives && expr.operator.type != TokenType.Implements) {
+            final Object left = evaluate(expr.left);
+            final Object right = evaluate(expr.right);
+            recorder.observe(expr, TraceRecorder.Operands.of(left, right));
+            return Operators.binary(expr.operator, left, right);
+        }
+        return expr.node.execute(this, expr);
     }
 
     @Override
@@ -342,119 +357,198 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(final Unary expr) {
-        final Object right = evaluate(expr.right);
-
-        switch (expr.operator.type) {
-            case Minus -> {
-                checkNumberOperand(expr.operator, right);
-                return -(double) right;
-            }
-            case Bang -> {
-                return !isTruthy(right);
-            }
-            default -> {
-                // Never here
-                return null;
-            }
-        }
+        return expr.node.execute(this, expr);
     }
 
     public Object evaluate(final Expr expr) {
         return expr.accept(this);
     }
 
-    private boolean isTruthy(final Object obj) {
-        if (obj == null) {
-            return false;
-        } else if (obj instanceof Boolean) {
-            return (boolean)obj;
-        } else {
-            return true;
+    // Evaluates `expr` without boxing when it's a node that has specialized itself to doubles. Integers are unexpected
+    // too: a double read from one couldn't tell the operator to stay integral.
+    public double evaluateDouble(final Expr expr) throws UnexpectedResult {
+        // While recording, operators go through `visitBinaryExpr` so their operands are seen.
+        if (expr instanceof final Binary binary && recorder == null) {
+            return binary.node.executeDouble(this, binary);
+        } else if (expr instanceof final Unary unary) {
+            return unary.node.executeDouble(this, unary);
+        } else if (expr instanceof final Grouping grouping) {
+            return evaluateDouble(grouping.expression);
+        } else if (expr instanceof final Variable variable && variable.depth != -1) {
+            // A local stored unboxed (a range's iterator, say) is read without boxing it again.
+            final Environment frame = environment.ancestor(variable.depth);
+            if (frame.holdsDouble(variable.slot)) {
+                return frame.numberAt(variable.slot);
+            }
+            throw new UnexpectedResult(frame.getAt(0, variable.slot));
         }
-    }
 
-    private boolean equ(final Object left, final Object right) {
-        if (left == null && right == null) {
-            return true;
-        } else if (left == null) {
-            return false;
+        final Object value = evaluate(expr);
+        if (value instanceof Double) {
+            return (double) value;
         }
-
-        return left.equals(right);
+        throw new UnexpectedResult(value);
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) {
-            return;
+    // The same for nodes that have specialized themselves to integers.
+    public long evaluateLong(final Expr expr) throws UnexpectedResult {
+        if (expr instanceof final Binary binary && recorder == null) {
+            return binary.node.executeLong(this, binary);
+        } else if (expr instanceof final Unary unary) {
+            return unary.node.executeLong(this, unary);
+        } else if (expr instanceof final Grouping grouping) {
+            return evaluateLong(grouping.expression);
+        } else if (expr instanceof final Variable variable && variable.depth != -1) {
+            final Environment frame = environment.ancestor(variable.depth);
+            if (frame.holdsInteger(variable.slot)) {
+                return frame.integerAt(variable.slot);
+            }
+            throw new UnexpectedResult(frame.getAt(0, variable.slot));
         }
 
-        throw new RuntimeError(operator, "Operand must be a number");
-    }
-
-    private void checkNumberOperands(Token operator, Object operand0, Object operand1) {
-        if (operand0 instanceof Double && operand1 instanceof Double) {
-            return;
+        final Object value = evaluate(expr);
+        if (value instanceof Long) {
+            return (long) value;
         }
-
-        throw new RuntimeError(operator, "Operands must be numbers.");
+        throw new UnexpectedResult(value);
     }
 
-    private String stringify(Object obj) {
-        if (obj == null) {
-            return "nothing";
-        }
-
-        if (obj instanceof Double) {
-            String text = obj.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length()-2);
-            }
-            return text;
+    // Evaluates `expr` for its truthiness, skipping the Boolean box for comparisons, `!`, `and` and `or`.
+    public boolean evaluateCondition(final Expr expr) {
+        // While recording, operators go through `visitBinaryExpr` so their operands are seen.
+        if (expr instanceof final Binary binary && recorder == null) {
+            return binary.node.executeCondition(this, binary);
+        } else if (expr instanceof final Unary unary) {
+            return unary.node.executeCondition(this, unary);
+        } else if (expr instanceof final Logical logical) {
+            return evaluateLogical(logical);
+        } else if (expr instanceof final Grouping grouping) {
+            return evaluateCondition(grouping.expression);
         }
 
-        return obj.toString();
+        return Operators.isTruthy(evaluate(expr));
     }
 
     @Override
     public Object visitAssignExpr(Assign expr) {
         final Object value = evaluate(expr.value);
-        final Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if (expr.depth != -1) {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
-            try {
-                globals.assign(expr.name, value);
-            } catch (RuntimeError ignored) {
-                environment.assign(expr.name, value);
-            }
+            assignGlobal(expr.name, expr.global, value, environment);
         }
         return value;
     }
 
     @Override
     public Object visitCallExpr(Call expr) {
+        if (expr.callee instanceof final Get get) {
+            return invoke(expr, get);
+        }
+        if (expr.callee instanceof final Super sup) {
+            return invoke(expr, sup);
+        }
+
         final Object callee = evaluate(expr.callee);
-        final List<Object> args = new ArrayList<>();
+        final Object[] args = arguments(callee, expr.arguments.size());
 
-        for (final Expr arg : expr.arguments) {
-            args.add(evaluate(arg));
+        for (int i = 0; i < expr.arguments.size(); ++i) {
+            args[i] = evaluate(expr.arguments.get(i));
         }
 
+        if (recorder != null) {
+            recorder.observe(expr, (callee instanceof final AstreFunction function) ? function.declaration : callee);
+        }
+
+        return call(expr, callee, args);
+    }
+
+    // The array a call to `callee` with `count` arguments evaluates them into.
+    public static Object[] arguments(final Object callee, final int count) {
+        if (callee instanceof final AstreCallable function && function.frameSize() > count) {
+            return Environment.frame(function.frameSize(), count);
+        }
+        return new Object[count];
+    }
+
+    // `obj.method(...)`: the method is called with `obj` as `self` instead of being bound to it first.
+    private Object invoke(final Call expr, final Get get) {
+        if (!(evaluate(get.obj) instanceof final AstreInstance instance)) {
+            throw new RuntimeError(get.name, "Only instances have properties");
+        }
+
+        final AstreFunction method = get.cache.method(instance, get.name.lexeme);
+        final Object callee = (method != null) ? method : get.cache.get(instance, get.name);
+        final Object[] args = arguments(callee, expr.arguments.size());
+
+        for (int i = 0; i < expr.arguments.size(); ++i) {
+            args[i] = evaluate(expr.arguments.get(i));
+        }
+
+        if (method != null) {
+            return invoke(expr, method, instance, args);
+        }
+        return call(expr, callee, args);
+    }
+
+    // `super.method(...)`, likewise without binding.
+    private Object invoke(final Call expr, final Super sup) {
+        final AstreFunction method = superMethod(sup, environment);
+        final AstreInstance self = (AstreInstance)environment.getAt(sup.selfDepth, sup.selfSlot);
+        final Object[] args = arguments(method, expr.arguments.size());
+
+        for (int i = 0; i < expr.arguments.size(); ++i) {
+            args[i] = evaluate(expr.arguments.get(i));
+        }
+
+        return invoke(expr, method, self, args);
+    }
+
+    public static AstreFunction superMethod(final Super expr, final Environment environment) {
+        final AstreStruct superStruct = (AstreStruct)environment.getAt(expr.depth, expr.slot);
+        final AstreFunction method = superStruct.findMethod(expr.method.lexeme);
+        if (method == null) {
+            throw new RuntimeError(expr.method, "Undefined property `" + expr.method.lexeme + "`.");
+        }
+        return method;
+    }
+
+    public Object call(final Call site, final Object callee, final Object[] args) {
         if (!(callee instanceof final AstreCallable function)) {
-            throw new RuntimeError(expr.paren, "Can only call function name and classes.");
+            throw new RuntimeError(site.paren, "Can only call function name and classes.");
         }
 
-        if (function.arity() != -1 && args.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got " + args.size() + ".");
+        checkArity(site, function);
+        if (function instanceof final AstreFunction astreFunction) {
+            return site.tailCall ? new AstreFunction.TailCall(astreFunction, astreFunction.receiver, args) : astreFunction.call(this, args);
         }
 
+        // Natives expect plain strings.
+        Rope.flatten(args);
         return function.call(this, args);
     }
 
+    public Object invoke(final Call site, final AstreFunction method, final AstreInstance self, final Object[] args) {
+        checkArity(site, method);
+        return site.tailCall ? new AstreFunction.TailCall(method, self, args) : method.invoke(this, self, args);
+    }
+
+    // Functions sharing a declaration share an arity, so a site only checks each one once.
+    private static void checkArity(final Call site, final AstreCallable function) {
+        final Object checked = (function instanceof final AstreFunction astreFunction) ? astreFunction.declaration : function;
+        if (site.checkedCallee != checked) {
+            final int count = site.arguments.size();
+            if (function.arity() != -1 && count != function.arity()) {
+                throw new RuntimeError(site.paren, "Expected " + function.arity() + " arguments but got " + count + ".");
+            }
+            site.checkedCallee = checked;
+        }
+    }
+
     @Override
     public Object visitGetExpr(Get expr) {
         if (evaluate(expr.obj) instanceof final AstreInstance obj) {
-            return obj.get(expr.name);
+            return expr.cache.get(obj, expr.name);
         }
 
         throw new RuntimeError(expr.name, "Only instances have properties");
@@ -462,20 +556,24 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitLogicalExpr(Logical expr) {
-        final Object left = evaluate(expr.left);
-        final Object right = evaluate(expr.right);
+        return evaluateLogical(expr);
+    }
+
+    private boolean evaluateLogical(final Logical expr) {
+        final boolean left = evaluateCondition(expr.left);
+        final boolean right = evaluateCondition(expr.right);
 
         if (expr.operator.type == TokenType.Or) {
-            return isTruthy(left) || isTruthy(right);
+            return left || right;
         }
 
-        return isTruthy(left) && isTruthy(right);
+        return left && right;
     }
 
     @Override
     public Object visitSetExpr(Set expr) {
         if (evaluate(expr.obj) instanceof final AstreInstance object) {
-            return object.set(expr.name, evaluate(expr.value));
+            return expr.cache.set(object, expr.name, evaluate(expr.value));
         }
 
         throw new RuntimeError(expr.name, "Only instances have fields.");
@@ -483,57 +581,96 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitSuperExpr(Super expr) {
-        final int distance = locals.get(expr);
-        final AstreStruct superStruct = (AstreStruct)environment.getAt(distance, "super");
-        final AstreInstance obj = (AstreInstance)environment.getAt(distance-1, "self");
-        final AstreFunction method = superStruct.findMethod(expr.method.lexeme);
-        if (method == null) {
-            throw new RuntimeError(expr.method, "Undefined property `" + expr.method.lexeme + "`.");
-        }
-
-        return method.bind(obj);
+        final AstreFunction method = superMethod(expr, environment);
+        return method.bind((AstreInstance)environment.getAt(expr.selfDepth, expr.selfSlot));
     }
 
     @Override
     public Object visitSelfExpr(Self expr) {
-        return lookupVariable(expr.keyword, expr);
+        return lookupVariable(expr.keyword, expr.depth, expr.slot);
     }
 
     @Override
     public Object visitVariable(Variable expr) {
-        return lookupVariable(expr.name, expr);
+        if (expr.depth != -1) {
+            return environment.getAt(expr.depth, expr.slot);
+        }
+        return lookupGlobal(expr.name, expr.global, environment);
+    }
+
+    private Object lookupVariable(Token name, int depth, int slot) {
+        if (depth != -1) {
+            return environment.getAt(depth, slot);
+        }
+        return lookupGlobal(name, environment);
+    }
+
+    public Object lookupGlobal(final Token name, final GlobalCache cache, final Environment from) {
+        Environment.Cell cell = cache.cell;
+        if (cell == null && (cell = cache.cell = globals.cell(name.lexeme)) == null) {
+            return lookupGlobal(name, from);
+        }
+        ++globalLookups;
+        return cell.value();
+    }
+
+    public void assignGlobal(final Token name, final GlobalCache cache, final Object value, final Environment from) {
+        Environment.Cell cell = cache.cell;
+        if (cell == null && (cell = cache.cell = globals.cell(name.lexeme)) == null) {
+            assignGlobal(name, value, from);
+            return;
+        }
+        ++globalLookups;
+        cell.assign(name, value);
+    }
+
+    // Finds a variable the resolver couldn't place: first in the globals, then by name from `from` outwards.
+    public Object lookupGlobal(final Token name, final Environment from) {
+        Object value = globals.lookup(name.lexeme);
+        if (value != Environment.UNDEFINED) {
+            ++globalLookups;
+            return value;
+        }
+
+        value = from.lookup(name.lexeme);
+        if (value != Environment.UNDEFINED) {
+            ++fallbackLookups;
+            return value;
+        }
+
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    private Object lookupVariable(Token name, Expr expr) {
-        final Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    public void assignGlobal(final Token name, final Object value, final Environment from) {
+        if (globals.assign(name, value)) {
+            ++globalLookups;
+        } else if (from.assign(name, value)) {
+            ++fallbackLookups;
         } else {
-            try {
-                return globals.get(name);
-            } catch (RuntimeError ignored) {
-                return environment.get(name);
-            }
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
         }
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return StmtCode.NORMAL;
     }
 
     @Override
-    public Void visitBlockStmt(Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Object visitBlockStmt(Block stmt) {
+        return executeBlock(stmt.statements, Environment.enter(environment, stmt));
     }
 
     @Override
-    public Void visitStructStmt(Struct stmt) {
-        final Object superStruct;
+    public Object visitStructStmt(Struct stmt) {
+        defineStruct(stmt, (stmt.superStruct != null) ? evaluate(stmt.superStruct) : null, environment);
+        return StmtCode.NORMAL;
+    }
+
+    // Declares the struct in `environment`, its methods closing over a scope holding `super` when it derives one.
+    public void defineStruct(final Struct stmt, final Object superStruct, final Environment environment) {
         if (stmt.superStruct != null) {
-            superStruct = evaluate(stmt.superStruct);
             switch (stmt.status) {
                 case Struct.DERIVES -> {
                     if (!(superStruct instanceof AstreStruct)) {
@@ -547,132 +684,125 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 }
                 default -> {}
             }
-        } else {
-            superStruct = null;
         }
 
-        environment.define(stmt.name, Modifier.Nullable, stmt.name.lexeme, null);
+        environment.declare(stmt.name, Modifier.Nullable, stmt.name, stmt.slot, null);
 
+        Environment closure = environment;
         if (stmt.status != Struct.NOTHING && stmt.status != Struct.IMPLEMENTS) {
-            environment = new Environment(environment);
-            environment.define(stmt.name, Modifier.Constant, "super", superStruct);
+            closure = new Environment(environment, Environment.SUPER_SCOPE);
+            closure.defineAt(stmt.name, Modifier.Constant, 0, superStruct);
         }
 
         final Map<String, AstreFunction> methods = new HashMap<>();
         for (final FunctionStmt method : stmt.methods) {
-            methods.put(method.name.lexeme, new AstreFunction(method, environment, method.name.lexeme.equals("anew")));
-        }
-
-        if (stmt.status != Struct.NOTHING && stmt.status != Struct.IMPLEMENTS) {
-            environment = environment.enclosing;
+            methods.put(method.name.lexeme, new AstreFunction(method, closure, method.name.lexeme.equals("anew")));
         }
 
         if (stmt.status == Struct.DERIVES || stmt.status == Struct.NOTHING) {
-            environment.assign(stmt.name, new AstreStruct(stmt.name.lexeme, (AstreStruct) superStruct, methods));
+            environment.initialize(stmt.name, stmt.slot, new AstreStruct(stmt.name.lexeme, (AstreStruct) superStruct, methods));
         } else {
-            environment.assign(stmt.name, new AstreStruct(stmt.name.lexeme, (AstreInterface) superStruct, methods));
+            environment.initialize(stmt.name, stmt.slot, new AstreStruct(stmt.name.lexeme, (AstreInterface) superStruct, methods));
         }
-
-        return null;
     }
 
     @Override
-    public Void visitFunctionStmt(FunctionStmt stmt) {
-        environment.define(stmt.name, Modifier.Nullable, stmt.name.lexeme, new AstreFunction(stmt, environment));
-        return null;
+    public Object visitFunctionStmt(FunctionStmt stmt) {
+        environment.declare(stmt.name, Modifier.Nullable, stmt.name, stmt.slot, new AstreFunction(stmt, environment));
+        return StmtCode.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+    public Object visitIfStmt(If stmt) {
+        final boolean taken = evaluateCondition(stmt.condition);
+        if (recorder != null) {
+            recorder.observe(stmt, taken);
+        }
+
+        if (taken) {
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return StmtCode.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Print stmt) {
-        System.out.print(stringify(evaluate(stmt.expression)));
+    public Object visitPrintStmt(Print stmt) {
+        Output.printValue(evaluate(stmt.expression));
         if (stmt.newLine) {
-            System.out.println();
+            Output.println();
         }
-        return null;
+        return StmtCode.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(ReturnStmt stmt) {
-        throw new Return((stmt.value != null) ? evaluate(stmt.value) : null);
+    public Object visitReturnStmt(ReturnStmt stmt) {
+        return (stmt.value != null) ? evaluate(stmt.value) : null;
     }
 
     @Override
-    public Void visitLetStmt(Let stmt) {
-        environment.define(stmt.keyword, stmt.mod, stmt.name.lexeme, (stmt.init != null) ? evaluate(stmt.init) : null);
-        return null;
+    public Object visitLetStmt(Let stmt) {
+        environment.declare(stmt.keyword, stmt.mod, stmt.name, stmt.slot, (stmt.init != null) ? evaluate(stmt.init) : null);
+        return StmtCode.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(While stmt) {
-        executeWhile(stmt, new Environment(environment));
-        return null;
+    public Object visitWhileStmt(While stmt) {
+        return executeWhile(stmt, Environment.enter(environment, stmt.scope));
     }
 
     @Override
-    public Void visitForStmt(For stmt) {
-        executeFor(stmt, new Environment(environment));
-        return null;
+    public Object visitForStmt(For stmt) {
+        return executeFor(stmt, Environment.enter(environment, stmt.scope));
     }
 
     @Override
-    public Void visitMatchStmt(Match stmt) {
+    public Object visitMatchStmt(Match stmt) {
         final Object toSwitchOn = evaluate(stmt.matchOn);
 
-        if (stmt.isStatic) {
-            final int caseStmt = stmt.statics.indexOf(toSwitchOn);
+        if (stmt.table != null) {
+            final int caseStmt = stmt.table.indexOf(toSwitchOn);
             if (caseStmt != -1) {
-                execute(stmt.possibilities.get(caseStmt).toRun);
-                return null;
+                return execute(stmt.possibilities.get(caseStmt).toRun);
             }
         } else {
             Object evald;
             for (final Case possibility : stmt.possibilities) {
                 evald = evaluate(possibility.possibility);
-                if (toSwitchOn.equals(evald)) {
-                    execute(possibility.toRun);
-                    return null;
+                if (Operators.equ(toSwitchOn, evald)) {
+                    return execute(possibility.toRun);
                 }
             }
         }
 
         if (stmt.ifAllElseFails != null) {
-            execute(stmt.ifAllElseFails);
+            return execute(stmt.ifAllElseFails);
         }
 
-        return null;
+        return StmtCode.NORMAL;
     }
 
     @Override
-    public Void visitInterfaceStmt(InterfaceStmt stmt) {
+    public Object visitInterfaceStmt(InterfaceStmt stmt) {
         final String name = stmt.name.lexeme;
         final Map<String, Integer> methods = new HashMap<>();
         Object e;
 
-        environment.define(stmt.name, Modifier.Nullable, stmt.name.lexeme, null);
+        environment.declare(stmt.name, Modifier.Nullable, stmt.name, stmt.slot, null);
 
         for (final Token methodName : stmt.methods.keySet()) {
             e = evaluate(stmt.methods.get(methodName));
-            methods.put(methodName.lexeme, (int)(double)e);
+            methods.put(methodName.lexeme, ((Number)e).intValue());
         }
 
-        environment.assign(stmt.name, new AstreInterface(name, methods));
+        environment.initialize(stmt.name, stmt.slot, new AstreInterface(name, methods));
 
-        return null;
+        return StmtCode.NORMAL;
     }
 
     @Override
-    public Void visitRangeStmt(RangeStmt stmt) {
-        executeRange(stmt, new Environment(environment));
-        return null;
+    public Object visitRangeStmt(RangeStmt stmt) {
+        return executeRange(stmt, new Environment(environment, stmt.scope));
     }
 }
\ No newline at end of file
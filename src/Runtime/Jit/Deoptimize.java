@@ -0,0 +1,11 @@
+package Runtime.Jit;
+
+// Thrown by compiled code when one of the assumptions it was compiled under stops holding. Compiled code never has
+// side effects, so the call it escaped from can simply be run again by the interpreter.
+public final class Deoptimize extends RuntimeException {
+    public static final Deoptimize INSTANCE = new Deoptimize();
+
+    private Deoptimize() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,154 @@
+package Runtime.Jit;
+
+import Parsing.Stmt.FunctionStmt;
+import Runtime.*;
+
+// The tier above the tree-walker: functions that get called often enough are compiled to JVM bytecode. Only bodies
+// without side effects are compiled, which is what lets a failed guard fall back by re-running the whole call.
+public final class Jit {
+    private Jit() {}
+
+    public static boolean enabled = true;
+
+    // Returned by `call` when the function has to be run by the interpreter.
+    public static final Object NOT_COMPILED = new Object();
+
+    private static final int THRESHOLD = 1000, MAX_DEOPTS = 10;
+
+    // Stored on a declaration that can't (or shouldn't any more) be compiled.
+    private static final JitCode REJECTED = (interpreter, closure, self, arguments) -> NOT_COMPILED;
+
+    public static Object call(final Interpreter interpreter, final FunctionStmt declaration, final Environment closure, final Object self, final boolean isAnew, final Object[] arguments) {
+        JitCode code = declaration.jitCode;
+        if (code == null) {
+            if (++declaration.calls < THRESHOLD) {
+                return NOT_COMPILED;
+            }
+            code = declaration.jitCode = isAnew ? REJECTED : compile(declaration, self, arguments);
+        }
+
+        try {
+            return code.invoke(interpreter, closure, self, arguments);
+        } catch (final Deoptimize deoptimize) {
+            if (++declaration.deopts == MAX_DEOPTS) {
+                declaration.jitCode = REJECTED;
+            }
+            return NOT_COMPILED;
+        }
+    }
+
+    private static JitCode compile(final FunctionStmt declaration, final Object self, final Object[] arguments) {
+        try {
+            final JitCode code = new JitCompiler(declaration, self, arguments).compile();
+            return (code != null) ? code : REJECTED;
+        } catch (final NoClassDefFoundError missingAsm) {
+            // ASM isn't on the classpath, so nothing can be compiled.
+            enabled = false;
+            return REJECTED;
+        }
+    }
+
+    // Helpers called from generated code.
+
+    // Integers and doubles are separate types in compiled code, just like in the interpreter.
+    public static long unboxLong(final Object value) {
+        if (value instanceof Long) {
+            return (long) value;
+        }
+        throw Deoptimize.INSTANCE;
+    }
+
+    public static double unboxDouble(final Object value) {
+        if (value instanceof Double) {
+            return (double) value;
+        }
+        throw Deoptimize.INSTANCE;
+    }
+
+    public static boolean unboxBoolean(final Object value) {
+        if (value instanceof Boolean) {
+            return (boolean) value;
+        }
+        throw Deoptimize.INSTANCE;
+    }
+
+    public static long fieldLong(final Object obj, final String name) {
+        if (obj instanceof final AstreInstance instance && instance.field(name) instanceof final Long value) {
+            return value;
+        }
+        throw Deoptimize.INSTANCE;
+    }
+
+    public static double field(final Object obj, final String name) {
+        if (obj instanceof final AstreInstance instance) {
+            final Object value = instance.field(name);
+            if (value instanceof Double) {
+                return (double) value;
+            }
+        }
+        throw Deoptimize.INSTANCE;
+    }
+
+    // A recursive call is only direct while the global still holds the function being compiled.
+    public static void checkSelf(final Environment globals, final String name, final FunctionStmt declaration) {
+        if (!(globals.lookup(name) instanceof final AstreFunction function) || !function.declaredBy(declaration)) {
+            throw Deoptimize.INSTANCE;
+        }
+    }
+
+    // `==` on numbers is `Double.equals`.
+    public static boolean same(final double left, final double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    // Integer arithmetic, which deoptimizes wherever `Operators` would have given a double instead.
+    public static long add(final long left, final long right) {
+        try {
+            return Math.addExact(left, right);
+        } catch (final ArithmeticException overflow) {
+            throw Deoptimize.INSTANCE;
+        }
+    }
+
+    public static long subtract(final long left, final long right) {
+        try {
+            return Math.subtractExact(left, right);
+        } catch (final ArithmeticException overflow) {
+            throw Deoptimize.INSTANCE;
+        }
+    }
+
+    public static long multiply(final long left, final long right) {
+        try {
+            return Math.multiplyExact(left, right);
+        } catch (final ArithmeticException overflow) {
+            throw Deoptimize.INSTANCE;
+        }
+    }
+
+    public static long divide(final long left, final long right) {
+        return integer(Operators.divide(left, right));
+    }
+
+    public static long modulo(final long left, final long right) {
+        return integer(Operators.modulo(left, right));
+    }
+
+    public static long power(final long base, final long exponent) {
+        return integer(Operators.power(base, exponent));
+    }
+
+    public static long negate(final long right) {
+        if (right == Long.MIN_VALUE) {
+            throw Deoptimize.INSTANCE;
+        }
+        return -right;
+    }
+
+    private static long integer(final Object result) {
+        if (result instanceof final Long integer) {
+            return integer;
+        }
+        throw Deoptimize.INSTANCE;
+    }
+}
@@ -0,0 +1,9 @@
+package Runtime.Jit;
+
+import Runtime.Environment;
+import Runtime.Interpreter;
+
+// Implemented by the classes the JIT generates, one per compiled function.
+public interface JitCode {
+    Object invoke(Interpreter interpreter, Environment closure, Object self, Object[] arguments);
+}
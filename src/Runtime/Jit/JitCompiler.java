@@ -0,0 +1,729 @@
+package Runtime.Jit;
+
+import java.util.List;
+import java.util.Stack;
+
+import org.objectweb.asm.*;
+
+import LexicalAnalysis.*;
+import Parsing.*;
+import Parsing.Expr.*;
+import Parsing.Expr.Set;
+import Parsing.Stmt.*;
+import Runtime.AstreInstance;
+
+import static org.objectweb.asm.Opcodes.*;
+
+// Compiles a function body into a JVM class. Values are statically typed as unboxed integers, doubles, booleans or
+// opaque objects (the instance behind `self`, or parameters that weren't numbers the first time the function was
+// compiled). Anything that could have a side effect is rejected, so compiled code only ever has to guard reads.
+final class JitCompiler implements Expr.Visitor<Character>, Stmt.Visitor<Void> {
+    private static final char INTEGER = 'J', NUMBER = 'D', BOOLEAN = 'Z', OBJECT = 'O';
+
+    private static final String JIT = "Runtime/Jit/Jit", ENVIRONMENT = "Runtime/Environment",
+            FUNCTION_STMT = "Parsing/Stmt$FunctionStmt", OBJECT_TYPE = "java/lang/Object";
+
+    // Thrown while generating code for something outside the supported subset.
+    private static final class Unsupported extends RuntimeException {
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Loader extends ClassLoader {
+        private Loader() {
+            super(JitCompiler.class.getClassLoader());
+        }
+
+        private Class<?> define(final String name, final byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static final Loader loader = new Loader();
+    private static int compiled = 0;
+
+    // The JVM locals holding one environment's worth of slots.
+    private static final class Scope {
+        private final int[] locals;
+        private final char[] types;
+
+        private Scope(final int size) {
+            this.locals = new int[size];
+            this.types = new char[size];
+        }
+    }
+
+    private final FunctionStmt declaration;
+    private final char[] paramTypes;
+    private final String className;
+
+    // The call that triggered compiling, which decides what kind of number a field is read as.
+    private final Object self;
+    private final Object[] arguments;
+
+    private char returnType;
+    private MethodVisitor method;
+    private Stack<Scope> scopes;
+    private int nextLocal;
+    private boolean letAllowed, returns;
+    private Label start;
+
+    JitCompiler(final FunctionStmt declaration, final Object self, final Object[] arguments) {
+        this.declaration = declaration;
+        this.self = self;
+        this.arguments = arguments;
+        this.paramTypes = new char[declaration.params.size()];
+        for (int i = 0; i < paramTypes.length; ++i) {
+            final Object argument = arguments[i];
+            paramTypes[i] = (argument instanceof Long) ? INTEGER : (argument instanceof Double) ? NUMBER
+                    : (argument instanceof Boolean) ? BOOLEAN : OBJECT;
+        }
+        this.className = "AstreJit$" + declaration.name.lexeme + "$" + (compiled++);
+    }
+
+    // Returns null when the body can't be compiled.
+    JitCode compile() {
+        for (final char type : new char[] { INTEGER, NUMBER, BOOLEAN }) {
+            try {
+                returnType = type;
+                final byte[] bytes = generate();
+                return (JitCode) loader.define(className, bytes).getConstructor(FunctionStmt.class).newInstance(declaration);
+            } catch (final Unsupported ignore) {
+                // Try the next return type.
+            } catch (final ReflectiveOperationException | VerifyError err) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private byte[] generate() {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+            @Override
+            protected String getCommonSuperClass(final String type1, final String type2) {
+                return OBJECT_TYPE;
+            }
+        };
+        writer.visit(V17, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, OBJECT_TYPE, new String[] { "Runtime/Jit/JitCode" });
+        writer.visitField(ACC_PRIVATE | ACC_FINAL, "declaration", "L" + FUNCTION_STMT + ";", null, null).visitEnd();
+
+        generateConstructor(writer);
+        generateBody(writer);
+        generateInvoke(writer);
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private void generateConstructor(final ClassWriter writer) {
+        final MethodVisitor init = writer.visitMethod(ACC_PUBLIC, "<init>", "(L" + FUNCTION_STMT + ";)V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, OBJECT_TYPE, "<init>", "()V", false);
+        init.visitVarInsn(ALOAD, 0);
+        init.visitVarInsn(ALOAD, 1);
+        init.visitFieldInsn(PUTFIELD, className, "declaration", "L" + FUNCTION_STMT + ";");
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+    }
+
+    // `body(globals, self, params...)` holds the compiled statements.
+    private void generateBody(final ClassWriter writer) {
+        method = writer.visitMethod(ACC_PRIVATE, "body", bodyDescriptor(), null, null);
+        method.visitCode();
+
+        scopes = new Stack<>();
+        returns = false;
+        nextLocal = 3;
+
+        final Scope scope = new Scope(declaration.scope.length);
+        for (int i = 0; i < paramTypes.length; ++i) {
+            scope.locals[i] = nextLocal;
+            scope.types[i] = paramTypes[i];
+            nextLocal += isWide(paramTypes[i]) ? 2 : 1;
+        }
+        if (declaration.selfSlot != -1) {
+            scope.locals[declaration.selfSlot] = 2;
+            scope.types[declaration.selfSlot] = OBJECT;
+        }
+        scopes.push(scope);
+
+        start = new Label();
+        method.visitLabel(start);
+        compileStatements(declaration.body);
+        if (!returns) {
+            throw new Unsupported();
+        }
+
+        // Falling off the end returns `nothing`, which isn't a number or a boolean.
+        deoptimize();
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    private void generateInvoke(final ClassWriter writer) {
+        final MethodVisitor invoke = writer.visitMethod(ACC_PUBLIC, "invoke", "(LRuntime/Interpreter;L" + ENVIRONMENT + ";Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        invoke.visitCode();
+        invoke.visitVarInsn(ALOAD, 0);
+        invoke.visitVarInsn(ALOAD, 1);
+        invoke.visitFieldInsn(GETFIELD, "Runtime/Interpreter", "globals", "L" + ENVIRONMENT + ";");
+
+        invoke.visitVarInsn(ALOAD, 3);
+
+        for (int i = 0; i < paramTypes.length; ++i) {
+            invoke.visitVarInsn(ALOAD, 4);
+            invoke.visitLdcInsn(i);
+            invoke.visitInsn(AALOAD);
+            if (paramTypes[i] == INTEGER) {
+                invoke.visitMethodInsn(INVOKESTATIC, JIT, "unboxLong", "(Ljava/lang/Object;)J", false);
+            } else if (paramTypes[i] == NUMBER) {
+                invoke.visitMethodInsn(INVOKESTATIC, JIT, "unboxDouble", "(Ljava/lang/Object;)D", false);
+            } else if (paramTypes[i] == BOOLEAN) {
+                invoke.visitMethodInsn(INVOKESTATIC, JIT, "unboxBoolean", "(Ljava/lang/Object;)Z", false);
+            }
+        }
+
+        invoke.visitMethodInsn(INVOKEVIRTUAL, className, "body", bodyDescriptor(), false);
+        if (returnType == INTEGER) {
+            invoke.visitMethodInsn(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+        } else if (returnType == NUMBER) {
+            invoke.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", false);
+        } else {
+            invoke.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+        }
+        invoke.visitInsn(ARETURN);
+        invoke.visitMaxs(0, 0);
+        invoke.visitEnd();
+    }
+
+    private String bodyDescriptor() {
+        final StringBuilder descriptor = new StringBuilder("(L" + ENVIRONMENT + ";Ljava/lang/Object;");
+        for (final char type : paramTypes) {
+            descriptor.append(descriptorOf(type));
+        }
+        return descriptor.append(')').append(returnType).toString();
+    }
+
+    private static String descriptorOf(final char type) {
+        return (type == OBJECT) ? "Ljava/lang/Object;" : String.valueOf(type);
+    }
+
+    private static boolean isWide(final char type) {
+        return type == INTEGER || type == NUMBER;
+    }
+
+    private void deoptimize() {
+        method.visitFieldInsn(GETSTATIC, "Runtime/Jit/Deoptimize", "INSTANCE", "LRuntime/Jit/Deoptimize;");
+        method.visitInsn(ATHROW);
+    }
+
+    private char compile(final Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void expect(final char type, final char expected) {
+        if (type != expected) {
+            throw new Unsupported();
+        }
+    }
+
+    // Statements in a block (or a function body) always run before anything that reads the locals they declare,
+    // which is what the verifier needs. A `let` anywhere else (e.g. an `if` without braces) isn't compiled.
+    private void compileStatements(final List<Stmt> statements) {
+        for (final Stmt statement : statements) {
+            letAllowed = true;
+            statement.accept(this);
+        }
+    }
+
+    private void compile(final Stmt stmt) {
+        letAllowed = false;
+        stmt.accept(this);
+    }
+
+    private Scope local(final int depth) {
+        if (depth < 0 || depth >= scopes.size()) {
+            throw new Unsupported();
+        }
+        return scopes.get((scopes.size()-1)-depth);
+    }
+
+    private void load(final char type, final int local) {
+        method.visitVarInsn((type == INTEGER) ? LLOAD : (type == NUMBER) ? DLOAD : (type == BOOLEAN) ? ILOAD : ALOAD, local);
+    }
+
+    private void store(final char type, final int local) {
+        method.visitVarInsn((type == INTEGER) ? LSTORE : (type == NUMBER) ? DSTORE : (type == BOOLEAN) ? ISTORE : ASTORE, local);
+    }
+
+    private int allocate(final char type) {
+        final int local = nextLocal;
+        nextLocal += isWide(type) ? 2 : 1;
+        return local;
+    }
+
+    private void compare(final int compareInsn, final int jumpIfFalse) {
+        final Label isFalse = new Label(), end = new Label();
+        method.visitInsn(compareInsn);
+        method.visitJumpInsn(jumpIfFalse, isFalse);
+        method.visitInsn(ICONST_1);
+        method.visitJumpInsn(GOTO, end);
+        method.visitLabel(isFalse);
+        method.visitInsn(ICONST_0);
+        method.visitLabel(end);
+    }
+
+    @Override
+    public Character visitAssignExpr(Assign expr) {
+        final Scope scope = local(expr.depth);
+        final char type = compile(expr.value);
+        expect(type, scope.types[expr.slot]);
+
+        method.visitInsn(isWide(type) ? DUP2 : DUP);
+        store(type, scope.locals[expr.slot]);
+        return type;
+    }
+
+    @Override
+    public Character visitBinaryExpr(Binary expr) {
+        if (expr.operator.type == TokenType.Derives || expr.operator.type == TokenType.Implements) {
+            throw new Unsupported();
+        }
+
+        final char left = compile(expr.left);
+        final char right = compile(expr.right);
+
+        if ((expr.operator.type == TokenType.EqualEqual || expr.operator.type == TokenType.BangEqual) && left == BOOLEAN) {
+            expect(right, BOOLEAN);
+            method.visitInsn(IXOR);
+            if (expr.operator.type == TokenType.EqualEqual) {
+                method.visitInsn(ICONST_1);
+                method.visitInsn(IXOR);
+            }
+            return BOOLEAN;
+        }
+
+        if (left == INTEGER && right == INTEGER) {
+            return integer(expr.operator.type);
+        }
+        widen(left, right);
+
+        switch (expr.operator.type) {
+            case Plus -> method.visitInsn(DADD);
+            case Minus -> method.visitInsn(DSUB);
+            case Star -> method.visitInsn(DMUL);
+            case Slash -> method.visitInsn(DDIV);
+            case Modulo -> method.visitInsn(DREM);
+            case Power -> method.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", false);
+            case Less -> compare(DCMPG, IFGE);
+            case LessEqual -> compare(DCMPG, IFGT);
+            case Greater -> compare(DCMPL, IFLE);
+            case GreaterEqual -> compare(DCMPL, IFLT);
+            case EqualEqual, BangEqual -> {
+                method.visitMethodInsn(INVOKESTATIC, JIT, "same", "(DD)Z", false);
+                if (expr.operator.type == TokenType.BangEqual) {
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(IXOR);
+                }
+            }
+            default -> throw new Unsupported();
+        }
+
+        return switch (expr.operator.type) {
+            case Plus, Minus, Star, Slash, Modulo, Power -> NUMBER;
+            default -> BOOLEAN;
+        };
+    }
+
+    // Two integers stay an integer, deoptimizing wherever the interpreter's result would have been a double.
+    private char integer(final TokenType operator) {
+        switch (operator) {
+            case Plus -> integerHelper("add");
+            case Minus -> integerHelper("subtract");
+            case Star -> integerHelper("multiply");
+            case Slash -> integerHelper("divide");
+            case Modulo -> integerHelper("modulo");
+            case Power -> integerHelper("power");
+            case Less -> compare(LCMP, IFGE);
+            case LessEqual -> compare(LCMP, IFGT);
+            case Greater -> compare(LCMP, IFLE);
+            case GreaterEqual -> compare(LCMP, IFLT);
+            case EqualEqual -> compare(LCMP, IFNE);
+            case BangEqual -> compare(LCMP, IFEQ);
+            default -> throw new Unsupported();
+        }
+
+        return switch (operator) {
+            case Plus, Minus, Star, Slash, Modulo, Power -> INTEGER;
+            default -> BOOLEAN;
+        };
+    }
+
+    private void integerHelper(final String name) {
+        method.visitMethodInsn(INVOKESTATIC, JIT, name, "(JJ)J", false);
+    }
+
+    // An integer next to a double is converted, same as `Operators.toDouble` in the interpreter.
+    private void widen(final char left, final char right) {
+        if (left != INTEGER && left != NUMBER || right != INTEGER && right != NUMBER) {
+            throw new Unsupported();
+        }
+
+        if (right == INTEGER) {
+            method.visitInsn(L2D);
+        }
+        if (left == INTEGER) {
+            final int temporary = allocate(NUMBER);
+            method.visitVarInsn(DSTORE, temporary);
+            method.visitInsn(L2D);
+            method.visitVarInsn(DLOAD, temporary);
+        }
+    }
+
+    // Only direct recursion is compiled, guarded on the global still holding this function.
+    @Override
+    public Character visitCallExpr(Call expr) {
+        checkSelf(expr);
+        method.visitVarInsn(ALOAD, 0);
+        method.visitVarInsn(ALOAD, 1);
+        method.visitVarInsn(ALOAD, 2);
+        for (int i = 0; i < paramTypes.length; ++i) {
+            expect(compile(expr.arguments.get(i)), paramTypes[i]);
+        }
+        method.visitMethodInsn(INVOKEVIRTUAL, className, "body", bodyDescriptor(), false);
+        return returnType;
+    }
+
+    // Only direct recursion is compiled; the global must still be this function when the call runs.
+    private void checkSelf(final Call expr) {
+        if (!(expr.callee instanceof final Variable callee) || callee.depth != -1
+                || !callee.name.lexeme.equals(declaration.name.lexeme) || expr.arguments.size() != paramTypes.length) {
+            throw new Unsupported();
+        }
+
+        method.visitVarInsn(ALOAD, 1);
+        method.visitLdcInsn(callee.name.lexeme);
+        method.visitVarInsn(ALOAD, 0);
+        method.visitFieldInsn(GETFIELD, className, "declaration", "L" + FUNCTION_STMT + ";");
+        method.visitMethodInsn(INVOKESTATIC, JIT, "checkSelf", "(L" + ENVIRONMENT + ";Ljava/lang/String;L" + FUNCTION_STMT + ";)V", false);
+    }
+
+    // A field is read as the kind of number it held when the function was compiled, same as the parameters.
+    @Override
+    public Character visitGetExpr(Get expr) {
+        final boolean integer = sample(expr.obj) instanceof final AstreInstance instance && instance.field(expr.name.lexeme) instanceof Long;
+        expect(compile(expr.obj), OBJECT);
+        method.visitLdcInsn(expr.name.lexeme);
+        if (integer) {
+            method.visitMethodInsn(INVOKESTATIC, JIT, "fieldLong", "(Ljava/lang/Object;Ljava/lang/String;)J", false);
+            return INTEGER;
+        }
+        method.visitMethodInsn(INVOKESTATIC, JIT, "field", "(Ljava/lang/Object;Ljava/lang/String;)D", false);
+        return NUMBER;
+    }
+
+    // What `expr` held in the call that triggered compiling, when it's `self` or a parameter. Null otherwise.
+    private Object sample(final Expr expr) {
+        if (expr instanceof final Grouping grouping) {
+            return sample(grouping.expression);
+        } else if (expr instanceof Self) {
+            return self;
+        } else if (expr instanceof final Variable variable && variable.depth >= 0 && variable.depth < scopes.size()
+                && local(variable.depth) == scopes.firstElement() && variable.slot < paramTypes.length) {
+            return arguments[variable.slot];
+        }
+        return null;
+    }
+
+    @Override
+    public Character visitGroupingExpr(Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Character visitLiteralExpr(Literal expr) {
+        if (expr.value instanceof final Long value) {
+            method.visitLdcInsn(value);
+            return INTEGER;
+        } else if (expr.value instanceof final Double value) {
+            method.visitLdcInsn(value);
+            return NUMBER;
+        } else if (expr.value instanceof final Boolean value) {
+            method.visitInsn(value ? ICONST_1 : ICONST_0);
+            return BOOLEAN;
+        }
+        throw new Unsupported();
+    }
+
+    // Both sides are always evaluated, same as the interpreter.
+    @Override
+    public Character visitLogicalExpr(Logical expr) {
+        expect(compile(expr.left), BOOLEAN);
+        expect(compile(expr.right), BOOLEAN);
+        method.visitInsn((expr.operator.type == TokenType.Or) ? IOR : IAND);
+        return BOOLEAN;
+    }
+
+    @Override
+    public Character visitSetExpr(Set expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Character visitSuperExpr(Super expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Character visitSelfExpr(Self expr) {
+        final Scope scope = local(expr.depth);
+        if (scope.types[expr.slot] != OBJECT) {
+            throw new Unsupported();
+        }
+        method.visitVarInsn(ALOAD, scope.locals[expr.slot]);
+        return OBJECT;
+    }
+
+    @Override
+    public Character visitUnaryExpr(Unary expr) {
+        if (expr.operator.type == TokenType.Bang) {
+            expect(compile(expr.right), BOOLEAN);
+            method.visitInsn(ICONST_1);
+            method.visitInsn(IXOR);
+            return BOOLEAN;
+        }
+
+        final char type = compile(expr.right);
+        if (type == INTEGER) {
+            method.visitMethodInsn(INVOKESTATIC, JIT, "negate", "(J)J", false);
+            return INTEGER;
+        }
+        expect(type, NUMBER);
+        method.visitInsn(DNEG);
+        return NUMBER;
+    }
+
+    @Override
+    public Character visitVariable(Variable expr) {
+        final Scope scope = local(expr.depth);
+        final char type = scope.types[expr.slot];
+        if (type == 0) {
+            throw new Unsupported();
+        }
+        load(type, scope.locals[expr.slot]);
+        return type;
+    }
+
+    // Scopes that declare nothing have no environment for the resolver's depths to count.
+    private void pushScope(final String[] scope) {
+        if (scope != null) {
+            scopes.push(new Scope(scope.length));
+        }
+    }
+
+    private void popScope(final String[] scope) {
+        if (scope != null) {
+            scopes.pop();
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Block stmt) {
+        pushScope(stmt.scope);
+        compileStatements(stmt.statements);
+        popScope(stmt.scope);
+        return null;
+    }
+
+    @Override
+    public Void visitStructStmt(Struct stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitExpressionStmt(Expression stmt) {
+        method.visitInsn(isWide(compile(stmt.expression)) ? POP2 : POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(FunctionStmt stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitIfStmt(If stmt) {
+        final Label otherwise = new Label(), end = new Label();
+        expect(compile(stmt.condition), BOOLEAN);
+        method.visitJumpInsn(IFEQ, otherwise);
+        compile(stmt.thenBranch);
+        method.visitJumpInsn(GOTO, end);
+        method.visitLabel(otherwise);
+        if (stmt.elseBranch != null) {
+            compile(stmt.elseBranch);
+        }
+        method.visitLabel(end);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Print stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitReturnStmt(ReturnStmt stmt) {
+        if (stmt.value == null) {
+            throw new Unsupported();
+        }
+        returns = true;
+
+        // `return f(...)` on itself becomes a jump back to the top with the new arguments in the parameters.
+        if (stmt.value instanceof final Call call && call.tailCall) {
+            checkSelf(call);
+            for (int i = 0; i < paramTypes.length; ++i) {
+                expect(compile(call.arguments.get(i)), paramTypes[i]);
+            }
+            for (int i = paramTypes.length - 1; i >= 0; --i) {
+                store(paramTypes[i], scopes.firstElement().locals[i]);
+            }
+            method.visitJumpInsn(GOTO, start);
+            return null;
+        }
+
+        expect(compile(stmt.value), returnType);
+        method.visitInsn((returnType == INTEGER) ? LRETURN : (returnType == NUMBER) ? DRETURN : IRETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitLetStmt(Let stmt) {
+        if (!letAllowed || stmt.init == null) {
+            throw new Unsupported();
+        }
+
+        final char type = compile(stmt.init);
+        final Scope scope = scopes.peek();
+        scope.types[stmt.slot] = type;
+        scope.locals[stmt.slot] = allocate(type);
+        store(type, scope.locals[stmt.slot]);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(While stmt) {
+        final Label loop = new Label(), end = new Label();
+        pushScope(stmt.scope);
+
+        method.visitLabel(loop);
+        expect(compile(stmt.condition), BOOLEAN);
+        method.visitJumpInsn(IFEQ, end);
+        compile(stmt.body);
+        method.visitJumpInsn(GOTO, loop);
+        method.visitLabel(end);
+
+        popScope(stmt.scope);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(For stmt) {
+        final Label loop = new Label(), end = new Label();
+        pushScope(stmt.scope);
+
+        if (stmt.init != null) {
+            // The initializer runs before anything in the loop could read it.
+            letAllowed = true;
+            stmt.init.accept(this);
+        }
+
+        method.visitLabel(loop);
+        if (stmt.condition != null) {
+            expect(compile(stmt.condition), BOOLEAN);
+            method.visitJumpInsn(IFEQ, end);
+        }
+        compile(stmt.body);
+        if (stmt.inc != null) {
+            compile(stmt.inc);
+        }
+        method.visitJumpInsn(GOTO, loop);
+        method.visitLabel(end);
+
+        popScope(stmt.scope);
+        return null;
+    }
+
+    @Override
+    public Void visitMatchStmt(Match stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitInterfaceStmt(InterfaceStmt stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitRangeStmt(RangeStmt stmt) {
+        final Label loop = new Label(), end = new Label();
+        final Scope scope = new Scope(stmt.scope.length);
+        scopes.push(scope);
+
+        // Same as the interpreter: the loop counts in integers only when the start, stop and step all are.
+        final Expr[] bounds = stmt.oneArg ? new Expr[] { null, stmt.stop, null } : new Expr[] { stmt.start, stmt.stop, stmt.step };
+        final char[] types = new char[bounds.length];
+        final int[] locals = new int[bounds.length];
+        char type = INTEGER;
+        for (int i = 0; i < bounds.length; ++i) {
+            if (bounds[i] == null) {
+                method.visitLdcInsn((i == 0) ? 0L : 1L);
+                types[i] = INTEGER;
+            } else {
+                types[i] = compile(bounds[i]);
+            }
+            if (!isWide(types[i])) {
+                throw new Unsupported();
+            }
+            locals[i] = allocate(types[i]);
+            store(types[i], locals[i]);
+            if (types[i] == NUMBER) {
+                type = NUMBER;
+            }
+        }
+        for (int i = 0; i < bounds.length; ++i) {
+            if (types[i] != type) {
+                load(types[i], locals[i]);
+                method.visitInsn(L2D);
+                locals[i] = allocate(type);
+                store(type, locals[i]);
+            }
+        }
+        final int counter = locals[0], stop = locals[1], step = locals[2];
+
+        // The iterator is a copy of the counter, so the body assigning to it doesn't change how often the loop runs.
+        scope.types[0] = type;
+        scope.locals[0] = allocate(type);
+
+        method.visitLabel(loop);
+        load(type, counter);
+        load(type, stop);
+        method.visitInsn((type == INTEGER) ? LCMP : DCMPG);
+        method.visitJumpInsn(IFGE, end);
+        load(type, counter);
+        store(type, scope.locals[0]);
+
+        compile(stmt.body);
+
+        load(type, counter);
+        load(type, step);
+        method.visitInsn((type == INTEGER) ? LADD : DADD);
+        store(type, counter);
+        method.visitJumpInsn(GOTO, loop);
+        method.visitLabel(end);
+
+        scopes.pop();
+        return null;
+    }
+}
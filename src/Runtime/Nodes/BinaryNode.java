@@ -0,0 +1,344 @@
+package Runtime.Nodes;
+
+import java.util.function.DoubleBinaryOperator;
+
+import LexicalAnalysis.TokenType;
+import Parsing.Expr;
+import Parsing.Expr.*;
+import Runtime.*;
+
+// The behaviour currently installed on an `Expr.Binary`. Every node starts out uninitialized and rewrites itself
+// into a version specialized for the operand types it sees, falling back to the generic node when they change.
+public abstract class BinaryNode {
+    public static final BinaryNode UNINITIALIZED = new Uninitialized();
+    private static final BinaryNode GENERIC = new Generic(), STRING_CONCAT = new StringConcat();
+
+    public abstract Object execute(Interpreter interpreter, Binary expr);
+
+    public double executeDouble(final Interpreter interpreter, final Binary expr) throws UnexpectedResult {
+        return expectDouble(execute(interpreter, expr));
+    }
+
+    public long executeLong(final Interpreter interpreter, final Binary expr) throws UnexpectedResult {
+        return expectLong(execute(interpreter, expr));
+    }
+
+    public boolean executeCondition(final Interpreter interpreter, final Binary expr) {
+        return Operators.isTruthy(execute(interpreter, expr));
+    }
+
+    // Called once the operands have already been evaluated, so they must not be evaluated again.
+    private static Object generalize(final Binary expr, final Object left, final Object right) {
+        expr.node = GENERIC;
+        return Operators.binary(expr.operator, left, right);
+    }
+
+    // An integer node whose operands stopped being integers moves on to doubles rather than straight to the generic node.
+    private static Object widen(final Binary expr, final Object left, final Object right) {
+        expr.node = (Operators.isNumber(left) && Operators.isNumber(right)) ? specialize(expr.operator.type, left, right) : GENERIC;
+        return Operators.binary(expr.operator, left, right);
+    }
+
+    private static double expectDouble(final Object value) throws UnexpectedResult {
+        if (value instanceof Double) {
+            return (double) value;
+        }
+        throw new UnexpectedResult(value);
+    }
+
+    private static long expectLong(final Object value) throws UnexpectedResult {
+        if (value instanceof Long) {
+            return (long) value;
+        }
+        throw new UnexpectedResult(value);
+    }
+
+    private static BinaryNode specialize(final TokenType operator, final Object left, final Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return switch (operator) {
+                case Plus -> ADD_LONG;
+                case Minus -> SUBTRACT_LONG;
+                case Star -> MULTIPLY_LONG;
+                case Modulo -> MODULO_LONG;
+                case Greater -> GREATER_LONG;
+                case GreaterEqual -> GREATER_EQUAL_LONG;
+                case Less -> LESS_LONG;
+                case LessEqual -> LESS_EQUAL_LONG;
+                case EqualEqual -> EQUAL_LONG;
+                case BangEqual -> NOT_EQUAL_LONG;
+                default -> GENERIC;
+            };
+        } else if (Operators.isNumber(left) && Operators.isNumber(right)) {
+            // At most one side is an integer here. It keeps being read as one, so two integers never give a double.
+            final boolean integerLeft = left instanceof Long, integerRight = right instanceof Long;
+            return switch (operator) {
+                case Plus -> new DoubleArithmetic(integerLeft, integerRight, (l, r) -> l + r);
+                case Minus -> new DoubleArithmetic(integerLeft, integerRight, (l, r) -> l - r);
+                case Star -> new DoubleArithmetic(integerLeft, integerRight, (l, r) -> l * r);
+                case Slash -> new DoubleArithmetic(integerLeft, integerRight, (l, r) -> l / r);
+                case Modulo -> new DoubleArithmetic(integerLeft, integerRight, (l, r) -> l % r);
+                case Power -> new DoubleArithmetic(integerLeft, integerRight, java.lang.Math::pow);
+                case Greater -> new DoubleComparison(integerLeft, integerRight, (l, r) -> l > r);
+                case GreaterEqual -> new DoubleComparison(integerLeft, integerRight, (l, r) -> l >= r);
+                case Less -> new DoubleComparison(integerLeft, integerRight, (l, r) -> l < r);
+                case LessEqual -> new DoubleComparison(integerLeft, integerRight, (l, r) -> l <= r);
+                // Matches `Double.equals`, which is what `==` used on boxed numbers (NaN equals itself, 0 and -0 differ).
+                case EqualEqual -> new DoubleComparison(integerLeft, integerRight, (l, r) -> Double.doubleToLongBits(l) == Double.doubleToLongBits(r));
+                case BangEqual -> new DoubleComparison(integerLeft, integerRight, (l, r) -> Double.doubleToLongBits(l) != Double.doubleToLongBits(r));
+                default -> GENERIC;
+            };
+        } else if (operator == TokenType.Plus && Rope.isString(left) && Rope.isString(right)) {
+            return STRING_CONCAT;
+        }
+
+        return GENERIC;
+    }
+
+    private static final class Uninitialized extends BinaryNode {
+        @Override
+        public Object execute(final Interpreter interpreter, final Binary expr) {
+            if (expr.operator.type == TokenType.Derives || expr.operator.type == TokenType.Implements) {
+                final String name = (expr.right instanceof final Variable variable) ? variable.name.lexeme : null;
+                expr.node = new TypeTest(AstreStruct.typeId(name));
+                return expr.node.execute(interpreter, expr);
+            }
+
+            final Object left = interpreter.evaluate(expr.left);
+            final Object right = interpreter.evaluate(expr.right);
+
+            expr.node = specialize(expr.operator.type, left, right);
+            return Operators.binary(expr.operator, left, right);
+        }
+    }
+
+    private static final class Generic extends BinaryNode {
+        @Override
+        public Object execute(final Interpreter interpreter, final Binary expr) {
+            final Object left = interpreter.evaluate(expr.left);
+            return Operators.binary(expr.operator, left, interpreter.evaluate(expr.right));
+        }
+    }
+
+    // `derives`/`implements`, whose right-hand side is a name rather than something to evaluate.
+    private static final class TypeTest extends BinaryNode {
+        private final int typeId;
+
+        private TypeTest(final int typeId) {
+            this.typeId = typeId;
+        }
+
+        @Override
+        public Object execute(final Interpreter interpreter, final Binary expr) {
+            final Object left = interpreter.evaluate(expr.left);
+            return (expr.operator.type == TokenType.Derives)
+                    ? Operators.derives(expr.operator, left, typeId)
+                    : Operators.implementsInterface(expr.operator, left, typeId);
+        }
+    }
+
+    private static final class StringConcat extends BinaryNode {
+        @Override
+        public Object execute(final Interpreter interpreter, final Binary expr) {
+            final Object left = interpreter.evaluate(expr.left);
+            final Object right = interpreter.evaluate(expr.right);
+
+            if (Rope.isString(left) && Rope.isString(right)) {
+                return Rope.concat((CharSequence) left, (CharSequence) right);
+            }
+
+            return generalize(expr, left, right);
+        }
+    }
+
+    private interface DoubleTest {
+        boolean test(double left, double right);
+    }
+
+    // A side marked integer is read with `evaluateLong`, the others with `evaluateDouble`, which only takes doubles.
+    private static final class DoubleArithmetic extends BinaryNode {
+        private final boolean integerLeft, integerRight;
+        private final DoubleBinaryOperator operator;
+
+        private DoubleArithmetic(final boolean integerLeft, final boolean integerRight, final DoubleBinaryOperator operator) {
+            this.integerLeft = integerLeft;
+            this.integerRight = integerRight;
+            this.operator = operator;
+        }
+
+        @Override
+        public Object execute(final Interpreter interpreter, final Binary expr) {
+            try {
+                return executeDouble(interpreter, expr);
+            } catch (final UnexpectedResult unexpected) {
+                return unexpected.result;
+            }
+        }
+
+        @Override
+        public double executeDouble(final Interpreter interpreter, final Binary expr) throws UnexpectedResult {
+            long integer = 0;
+            final double left;
+            try {
+                if (integerLeft) {
+                    integer = interpreter.evaluateLong(expr.left);
+                    left = integer;
+                } else {
+                    left = interpreter.evaluateDouble(expr.left);
+                }
+            } catch (final UnexpectedResult unexpected) {
+                return expectDouble(generalize(expr, unexpected.result, interpreter.evaluate(expr.right)));
+            }
+
+            final double right;
+            try {
+                right = operand(interpreter, expr.right, integerRight);
+            } catch (final UnexpectedResult unexpected) {
+                return expectDouble(generalize(expr, integerLeft ? (Object) integer : (Object) left, unexpected.result));
+            }
+
+            return operator.applyAsDouble(left, right);
+        }
+    }
+
+    private static final class DoubleComparison extends BinaryNode {
+        private final boolean integerLeft, integerRight;
+        private final DoubleTest test;
+
+        private DoubleComparison(final boolean integerLeft, final boolean integerRight, final DoubleTest test) {
+            this.integerLeft = integerLeft;
+            this.integerRight = integerRight;
+            this.test = test;
+        }
+
+        @Override
+        public Object execute(final Interpreter interpreter, final Binary expr) {
+            return executeCondition(interpreter, expr);
+        }
+
+        @Override
+        public boolean executeCondition(final Interpreter interpreter, final Binary expr) {
+            long integer = 0;
+            final double left;
+            try {
+                if (integerLeft) {
+                    integer = interpreter.evaluateLong(expr.left);
+                    left = integer;
+                } else {
+                    left = interpreter.evaluateDouble(expr.left);
+                }
+            } catch (final UnexpectedResult unexpected) {
+                return Operators.isTruthy(generalize(expr, unexpected.result, interpreter.evaluate(expr.right)));
+            }
+
+            final double right;
+            try {
+                right = operand(interpreter, expr.right, integerRight);
+            } catch (final UnexpectedResult unexpected) {
+                return Operators.isTruthy(generalize(expr, integerLeft ? (Object) integer : (Object) left, unexpected.result));
+            }
+
+            return test.test(left, right);
+        }
+    }
+
+    private static double operand(final Interpreter interpreter, final Expr expr, final boolean integer) throws UnexpectedResult {
+        return integer ? interpreter.evaluateLong(expr) : interpreter.evaluateDouble(expr);
+    }
+
+    private abstract static class LongArithmetic extends BinaryNode {
+        // Throws `ArithmeticException` when the result isn't a long.
+        protected abstract long apply(long left, long right);
+
+        @Override
+        public Object execute(final Interpreter interpreter, final Binary expr) {
+            try {
+                return executeLong(interpreter, expr);
+            } catch (final UnexpectedResult unexpected) {
+                return unexpected.result;
+            }
+        }
+
+        @Override
+        public long executeLong(final Interpreter interpreter, final Binary expr) throws UnexpectedResult {
+            final long left;
+            try {
+                left = interpreter.evaluateLong(expr.left);
+            } catch (final UnexpectedResult unexpected) {
+                return expectLong(widen(expr, unexpected.result, interpreter.evaluate(expr.right)));
+            }
+
+            final long right;
+            try {
+                right = interpreter.evaluateLong(expr.right);
+            } catch (final UnexpectedResult unexpected) {
+                return expectLong(widen(expr, left, unexpected.result));
+            }
+
+            try {
+                return apply(left, right);
+            } catch (final ArithmeticException overflow) {
+                throw new UnexpectedResult(Operators.binary(expr.operator, left, right));
+            }
+        }
+    }
+
+    private abstract static class LongComparison extends BinaryNode {
+        protected abstract boolean apply(long left, long right);
+
+        @Override
+        public Object execute(final Interpreter interpreter, final Binary expr) {
+            return executeCondition(interpreter, expr);
+        }
+
+        @Override
+        public boolean executeCondition(final Interpreter interpreter, final Binary expr) {
+            final long left;
+            try {
+                left = interpreter.evaluateLong(expr.left);
+            } catch (final UnexpectedResult unexpected) {
+                return Operators.isTruthy(widen(expr, unexpected.result, interpreter.evaluate(expr.right)));
+            }
+
+            final long right;
+            try {
+                right = interpreter.evaluateLong(expr.right);
+            } catch (final UnexpectedResult unexpected) {
+                return Operators.isTruthy(widen(expr, left, unexpected.result));
+            }
+
+            return apply(left, right);
+        }
+    }
+
+    private static final BinaryNode ADD_LONG = new LongArithmetic() {
+        @Override protected long apply(long left, long right) { return Math.addExact(left, right); }
+    };
+    private static final BinaryNode SUBTRACT_LONG = new LongArithmetic() {
+        @Override protected long apply(long left, long right) { return Math.subtractExact(left, right); }
+    };
+    private static final BinaryNode MULTIPLY_LONG = new LongArithmetic() {
+        @Override protected long apply(long left, long right) { return Math.multiplyExact(left, right); }
+    };
+    // `% 0` throws, and is NaN the generic way.
+    private static final BinaryNode MODULO_LONG = new LongArithmetic() {
+        @Override protected long apply(long left, long right) { return left % right; }
+    };
+    private static final BinaryNode GREATER_LONG = new LongComparison() {
+        @Override protected boolean apply(long left, long right) { return left > right; }
+    };
+    private static final BinaryNode GREATER_EQUAL_LONG = new LongComparison() {
+        @Override protected boolean apply(long left, long right) { return left >= right; }
+    };
+    private static final BinaryNode LESS_LONG = new LongComparison() {
+        @Override protected boolean apply(long left, long right) { return left < right; }
+    };
+    private static final BinaryNode LESS_EQUAL_LONG = new LongComparison() {
+        @Override protected boolean apply(long left, long right) { return left <= right; }
+    };
+    private static final BinaryNode EQUAL_LONG = new LongComparison() {
+        @Override protected boolean apply(long left, long right) { return left == right; }
+    };
+    private static final BinaryNode NOT_EQUAL_LONG = new LongComparison() {
+        @Override protected boolean apply(long left, long right) { return left != right; }
+    };
+}
@@ -0,0 +1,121 @@
+package Runtime.Nodes;
+
+import LexicalAnalysis.TokenType;
+import Parsing.Expr.*;
+import Runtime.*;
+
+// The behaviour currently installed on an `Expr.Unary`, rewritten the same way as `BinaryNode`.
+public abstract class UnaryNode {
+    public static final UnaryNode UNINITIALIZED = new Uninitialized();
+    private static final UnaryNode GENERIC = new Generic(), NEGATE = new Negate(), NEGATE_LONG = new NegateLong(), NOT = new Not();
+
+    public abstract Object execute(Interpreter interpreter, Unary expr);
+
+    public double executeDouble(final Interpreter interpreter, final Unary expr) throws UnexpectedResult {
+        final Object value = execute(interpreter, expr);
+        if (value instanceof Double) {
+            return (double) value;
+        }
+        throw new UnexpectedResult(value);
+    }
+
+    public long executeLong(final Interpreter interpreter, final Unary expr) throws UnexpectedResult {
+        final Object value = execute(interpreter, expr);
+        if (value instanceof Long) {
+            return (long) value;
+        }
+        throw new UnexpectedResult(value);
+    }
+
+    public boolean executeCondition(final Interpreter interpreter, final Unary expr) {
+        return Operators.isTruthy(execute(interpreter, expr));
+    }
+
+    private static final class Uninitialized extends UnaryNode {
+        @Override
+        public Object execute(final Interpreter interpreter, final Unary expr) {
+            if (expr.operator.type == TokenType.Bang) {
+                expr.node = NOT;
+                return NOT.execute(interpreter, expr);
+            }
+
+            final Object right = interpreter.evaluate(expr.right);
+            expr.node = (expr.operator.type != TokenType.Minus) ? GENERIC
+                    : (right instanceof Long) ? NEGATE_LONG
+                    : (right instanceof Double) ? NEGATE : GENERIC;
+            return Operators.unary(expr.operator, right);
+        }
+    }
+
+    private static final class Generic extends UnaryNode {
+        @Override
+        public Object execute(final Interpreter interpreter, final Unary expr) {
+            return Operators.unary(expr.operator, interpreter.evaluate(expr.right));
+        }
+    }
+
+    private static final class Negate extends UnaryNode {
+        @Override
+        public Object execute(final Interpreter interpreter, final Unary expr) {
+            try {
+                return executeDouble(interpreter, expr);
+            } catch (final UnexpectedResult unexpected) {
+                return unexpected.result;
+            }
+        }
+
+        @Override
+        public double executeDouble(final Interpreter interpreter, final Unary expr) throws UnexpectedResult {
+            try {
+                return -interpreter.evaluateDouble(expr.right);
+            } catch (final UnexpectedResult unexpected) {
+                expr.node = GENERIC;
+                // Throws for anything that isn't a number, an integer stays one.
+                final Object result = Operators.unary(expr.operator, unexpected.result);
+                if (result instanceof Double) {
+                    return (double) result;
+                }
+                throw new UnexpectedResult(result);
+            }
+        }
+    }
+
+    private static final class NegateLong extends UnaryNode {
+        @Override
+        public Object execute(final Interpreter interpreter, final Unary expr) {
+            try {
+                return executeLong(interpreter, expr);
+            } catch (final UnexpectedResult unexpected) {
+                return unexpected.result;
+            }
+        }
+
+        @Override
+        public long executeLong(final Interpreter interpreter, final Unary expr) throws UnexpectedResult {
+            final long right;
+            try {
+                right = interpreter.evaluateLong(expr.right);
+            } catch (final UnexpectedResult unexpected) {
+                expr.node = (unexpected.result instanceof Double) ? NEGATE : GENERIC;
+                throw new UnexpectedResult(Operators.unary(expr.operator, unexpected.result));
+            }
+
+            if (right == Long.MIN_VALUE) {
+                throw new UnexpectedResult(Operators.unary(expr.operator, right));
+            }
+            return -right;
+        }
+    }
+
+    private static final class Not extends UnaryNode {
+        @Override
+        public Object execute(final Interpreter interpreter, final Unary expr) {
+            return executeCondition(interpreter, expr);
+        }
+
+        @Override
+        public boolean executeCondition(final Interpreter interpreter, final Unary expr) {
+            return !interpreter.evaluateCondition(expr.right);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package Runtime.Nodes;
+
+// Thrown by a specialized `execute*` method when the value it produced doesn't have the type it promised.
+public class UnexpectedResult extends Exception {
+    public final Object result;
+
+    public UnexpectedResult(final Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
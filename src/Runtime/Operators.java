@@ -0,0 +1,276 @@
+package Runtime;
+
+import LexicalAnalysis.*;
+
+import static java.lang.Math.pow;
+
+// The generic (unspecialized) semantics of Astre's operators, shared by every execution engine.
+public final class Operators {
+    private Operators() {}
+
+    public static Object binary(final Token operator, final Object left, final Object right) {
+        if (left instanceof final Long l && right instanceof final Long r) {
+            final Object result = integer(operator.type, l, r);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        switch (operator.type) {
+            case Plus -> {
+                if (isNumber(left) && isNumber(right)) {
+                    return toDouble(left) + toDouble(right);
+                } else if (Rope.isString(left) && Rope.isString(right)) {
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
+                }
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings");
+            }
+            case Minus -> {
+                checkNumberOperands(operator, left, right);
+                return toDouble(left) - toDouble(right);
+            }
+            case Star -> {
+                checkNumberOperands(operator, left, right);
+                return toDouble(left) * toDouble(right);
+            }
+            case Slash -> {
+                checkNumberOperands(operator, left, right);
+                return toDouble(left) / toDouble(right);
+            }
+            case Modulo -> {
+                checkNumberOperands(operator, left, right);
+                return toDouble(left) % toDouble(right);
+            }
+            case Power -> {
+                checkNumberOperands(operator, left, right);
+                return pow(toDouble(left), toDouble(right));
+            }
+            case Greater -> {
+                checkNumberOperands(operator, left, right);
+                return toDouble(left) > toDouble(right);
+            }
+            case GreaterEqual -> {
+                checkNumberOperands(operator, left, right);
+                return toDouble(left) >= toDouble(right);
+            }
+            case Less -> {
+                checkNumberOperands(operator, left, right);
+                return toDouble(left) < toDouble(right);
+            }
+            case LessEqual -> {
+                checkNumberOperands(operator, left, right);
+                return toDouble(left) <= toDouble(right);
+            }
+            case BangEqual -> {
+                return !equ(left, right);
+            }
+            case EqualEqual -> {
+                return equ(left, right);
+            }
+            default -> {
+            }
+        }
+
+        // Never here
+        return null;
+    }
+
+    // `left operator right` on two integers, which stays an integer unless it overflows (or, for `/`, leaves a
+    // remainder). Null for operators that don't take numbers.
+    private static Object integer(final TokenType operator, final long left, final long right) {
+        return switch (operator) {
+            case Plus -> add(left, right);
+            case Minus -> subtract(left, right);
+            case Star -> multiply(left, right);
+            case Slash -> divide(left, right);
+            case Modulo -> modulo(left, right);
+            case Power -> power(left, right);
+            case Greater -> left > right;
+            case GreaterEqual -> left >= right;
+            case Less -> left < right;
+            case LessEqual -> left <= right;
+            default -> null;
+        };
+    }
+
+    public static Object add(final long left, final long right) {
+        final long result = left + right;
+        return (((left ^ result) & (right ^ result)) < 0) ? (Object) ((double) left + (double) right) : (Object) result;
+    }
+
+    public static Object subtract(final long left, final long right) {
+        final long result = left - right;
+        return (((left ^ right) & (left ^ result)) < 0) ? (Object) ((double) left - (double) right) : (Object) result;
+    }
+
+    public static Object multiply(final long left, final long right) {
+        final long high = Math.multiplyHigh(left, right), result = left * right;
+        return ((high == 0 && result >= 0) || (high == -1 && result < 0)) ? (Object) result : (Object) ((double) left * (double) right);
+    }
+
+    public static Object divide(final long left, final long right) {
+        if (right != 0 && left % right == 0 && (left != Long.MIN_VALUE || right != -1)) {
+            return left / right;
+        }
+        return (double) left / (double) right;
+    }
+
+    public static Object modulo(final long left, final long right) {
+        return (right != 0) ? (Object) (left % right) : (Object) ((double) left % (double) right);
+    }
+
+    public static Object power(final long base, final long exponent) {
+        if (exponent < 0) {
+            return pow(base, exponent);
+        }
+
+        long result = 1, square = base;
+        try {
+            for (long remaining = exponent; remaining != 0; remaining >>= 1) {
+                if ((remaining & 1) != 0) {
+                    result = Math.multiplyExact(result, square);
+                }
+                if (remaining > 1) {
+                    square = Math.multiplyExact(square, square);
+                }
+            }
+        } catch (final ArithmeticException overflow) {
+            return pow(base, exponent);
+        }
+        return result;
+    }
+
+    public static Object unary(final Token operator, final Object right) {
+        switch (operator.type) {
+            case Minus -> {
+                if (right instanceof final Long integer) {
+                    return (integer != Long.MIN_VALUE) ? (Object) (-integer) : (Object) (-(double) integer);
+                }
+                checkNumberOperand(operator, right);
+                return -(double) right;
+            }
+            case Bang -> {
+                return !isTruthy(right);
+            }
+            default -> {
+                // Never here
+                return null;
+            }
+        }
+    }
+
+    // `typeId` is the `AstreStruct.typeId` of the right-hand side of `derives`/`implements`, -1 when it wasn't an
+    // identifier.
+    public static boolean derives(final Token operator, final Object left, final int typeId) {
+        checkTypeTest(operator, left, typeId);
+        return ((AstreInstance)left).struct.derives(typeId);
+    }
+
+    public static boolean implementsInterface(final Token operator, final Object left, final int typeId) {
+        checkTypeTest(operator, left, typeId);
+        return ((AstreInstance)left).struct.implementsInterface(typeId);
+    }
+
+    private static void checkTypeTest(final Token operator, final Object left, final int typeId) {
+        if (!(left instanceof AstreInstance)) {
+            throw new RuntimeError(operator, "`derives` can only be used on an instance");
+        }
+        if (typeId == -1) {
+            throw new RuntimeError(operator, "`derives` cannot be compared to a non-identifier");
+        }
+    }
+
+    public static boolean isTruthy(final Object obj) {
+        if (obj == null) {
+            return false;
+        } else if (obj instanceof Boolean) {
+            return (boolean)obj;
+        } else {
+            return true;
+        }
+    }
+
+    public static boolean equ(final Object left, final Object right) {
+        if (left == null && right == null) {
+            return true;
+        } else if (left == null) {
+            return false;
+        }
+
+        if (left instanceof Double && right instanceof Long || left instanceof Long && right instanceof Double) {
+            return Double.doubleToLongBits(toDouble(left)) == Double.doubleToLongBits(toDouble(right));
+        }
+        if (left instanceof Rope || right instanceof Rope) {
+            return Rope.flatten(left).equals(Rope.flatten(right));
+        }
+        return left.equals(right);
+    }
+
+    public static boolean isNumber(final Object value) {
+        return value instanceof Double || value instanceof Long;
+    }
+
+    // Only called on values `isNumber` accepted.
+    public static double toDouble(final Object number) {
+        return (number instanceof final Long integer) ? (double) integer : (double) number;
+    }
+
+    // What `match` compares by: a double holding a whole number is the same case as the integer.
+    public static Object matchKey(final Object value) {
+        if (value instanceof final Double number) {
+            final long integer = (long) (double) number;
+            if (integer == number && integer != Long.MAX_VALUE) {
+                return integer;
+            }
+        }
+        return Rope.flatten(value);
+    }
+
+    public static void checkNumberOperand(Token operator, Object operand) {
+        if (isNumber(operand)) {
+            return;
+        }
+
+        throw new RuntimeError(operator, "Operand must be a number");
+    }
+
+    public static void checkNumberOperands(Token operator, Object operand0, Object operand1) {
+        if (isNumber(operand0) && isNumber(operand1)) {
+            return;
+        }
+
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    public static String stringify(Object obj) {
+        if (obj == null) {
+            return "nothing";
+        }
+
+        // Integers print exactly as the same number held in a double would.
+        if (obj instanceof final Long integer) {
+            return printsAsInteger(integer) ? integer.toString() : stringify((double) integer);
+        }
+
+        if (obj instanceof final Double number) {
+            if (printsAsInteger(number)) {
+                return Long.toString((long) (double) number);
+            }
+
+            // Only -0.0 is left to lose its `.0`, every other whole double is in exponent notation.
+            final String text = number.toString();
+            return text.endsWith(".0") ? text.substring(0, text.length()-2) : text;
+        }
+
+        return obj.toString();
+    }
+
+    // Below 10^7 `Double.toString` writes whole numbers out in full, which is what printing them as integers matches.
+    public static boolean printsAsInteger(final long integer) {
+        return integer > -10_000_000L && integer < 10_000_000L;
+    }
+
+    public static boolean printsAsInteger(final double number) {
+        return number > -1e7 && number < 1e7 && number == (long) number && (number != 0 || 1 / number > 0);
+    }
+}
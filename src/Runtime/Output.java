@@ -0,0 +1,86 @@
+package Runtime;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+// Standard output for scripts, buffered instead of going to `System.out` a value at a time. On a terminal each
+// finished line is flushed so output still appears as it's written; a pipe or file only sees it when the buffer
+// fills, on `flush()`, or at exit.
+public final class Output {
+    private Output() {}
+
+    private static final int CAPACITY = 1 << 16;
+
+    private static final boolean lineBuffered = System.console() != null;
+    private static final PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), CAPACITY), false);
+    private static final byte[] digits = new byte[20];
+
+    static {
+        java.lang.Runtime.getRuntime().addShutdownHook(new Thread(Output::flush));
+    }
+
+    // How the io natives show a value. Numbers used to all be doubles, so an integer is written as the double it would
+    // have been (`7.0`), the same as a double holding it.
+    public static String text(final Object value) {
+        return (value instanceof final Long integer) ? String.valueOf((double) integer) : String.valueOf(value);
+    }
+
+    public static void print(final Object value) {
+        final String text = text(value);
+        out.print(text);
+        if (lineBuffered && text.indexOf('\n') != -1) {
+            out.flush();
+        }
+    }
+
+    // Writes `value` the way the `print` statement shows it. Numbers that print as integers go straight into the buffer
+    // as digits, without a string in between.
+    public static void printValue(final Object value) {
+        if (value instanceof final Long integer && Operators.printsAsInteger(integer)) {
+            printDigits(integer);
+        } else if (value instanceof final Double number && Operators.printsAsInteger(number)) {
+            printDigits((long) (double) number);
+        } else {
+            print(Operators.stringify(value));
+        }
+    }
+
+    private static void printDigits(long value) {
+        // Digits are ASCII in any charset stdout could be using.
+        int start = digits.length;
+        final boolean negative = value < 0;
+        if (!negative) {
+            value = -value;
+        }
+
+        // Counted down in negatives so that `Long.MIN_VALUE` works too.
+        do {
+            digits[--start] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        if (negative) {
+            digits[--start] = '-';
+        }
+        out.write(digits, start, digits.length - start);
+    }
+
+    public static void println() {
+        out.println();
+        if (lineBuffered) {
+            out.flush();
+        }
+    }
+
+    public static void println(final Object value) {
+        out.print(value);
+        println();
+    }
+
+    // Called before anything else reaches the terminal (errors, prompts) so it comes out in order.
+    public static void flush() {
+        out.flush();
+    }
+}
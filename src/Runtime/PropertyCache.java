@@ -0,0 +1,82 @@
+package Runtime;
+
+import LexicalAnalysis.Token;
+
+// A polymorphic inline cache for one property access site, keyed on the receiver's shape. A hit is a field index (or
+// the method the name resolves to) without looking the name up. A site that sees more than `MAX_SHAPES` shapes stops
+// caching and always does the full lookup.
+public final class PropertyCache {
+    private static final int MAX_SHAPES = 4;
+
+    private final Shape[] shapes = new Shape[MAX_SHAPES];
+    // -1 when the name isn't a field of that shape, in which case `methods` holds what it resolves to (maybe null).
+    private final int[] indices = new int[MAX_SHAPES];
+    private final AstreFunction[] methods = new AstreFunction[MAX_SHAPES];
+    // For sets that add the field: the shape the instance moves to, and where the field is in it.
+    private final Shape[] targets = new Shape[MAX_SHAPES];
+    private final int[] targetIndices = new int[MAX_SHAPES];
+    private int size = 0;
+    private boolean megamorphic = false;
+
+    public Object get(final AstreInstance instance, final Token name) {
+        final int entry = lookup(instance, name.lexeme);
+        if (entry == -1) {
+            return instance.get(name);
+        }
+
+        if (indices[entry] != -1) {
+            return instance.values[indices[entry]];
+        } else if (methods[entry] != null) {
+            return methods[entry].bind(instance);
+        }
+        throw new RuntimeError(name, "Undefined property `" + name.lexeme + "`.");
+    }
+
+    // The method `obj.name(...)` would call, null when a field shadows it or there's no such method.
+    public AstreFunction method(final AstreInstance instance, final String name) {
+        final int entry = lookup(instance, name);
+        if (entry == -1) {
+            return instance.method(name);
+        }
+        return methods[entry];
+    }
+
+    public Object set(final AstreInstance instance, final Token name, final Object value) {
+        final int entry = lookup(instance, name.lexeme);
+        if (entry == -1) {
+            return instance.set(name, value);
+        }
+
+        if (indices[entry] != -1) {
+            instance.values[indices[entry]] = value;
+        } else {
+            if (targets[entry] == null) {
+                targets[entry] = shapes[entry].with(name.lexeme);
+                targetIndices[entry] = targets[entry].size() - 1;
+            }
+            instance.put(targets[entry], targetIndices[entry], value);
+        }
+        return value;
+    }
+
+    private int lookup(final AstreInstance instance, final String name) {
+        final Shape shape = instance.shape;
+        for (int i = 0; i < size; ++i) {
+            if (shapes[i] == shape) {
+                return i;
+            }
+        }
+        if (megamorphic) {
+            return -1;
+        } else if (size == MAX_SHAPES) {
+            megamorphic = true;
+            return -1;
+        }
+
+        final int index = shape.indexOf(name);
+        shapes[size] = shape;
+        indices[size] = index;
+        methods[size] = (index == -1) ? instance.struct.findMethod(name) : null;
+        return size++;
+    }
+}
@@ -1,10 +0,0 @@
-package Runtime;
-
-public class Return extends RuntimeException {
-    public final Object value;
-
-    public Return(Object value) {
-        super(null, null, false, false);
-        this.value = value;
-    }
-}
\ No newline at end of file
@@ -0,0 +1,83 @@
+package Runtime;
+
+// A string built by `+` that hasn't been looked at yet. Ropes share one append buffer: `s = s + t` appends to the
+// buffer in place when `s` is the last rope made from it, so building a string a piece at a time stays linear. It's
+// flattened to a `java.lang.String` when printed, compared, used as a match key or passed to a native.
+public final class Rope implements CharSequence {
+    // Shorter results are just concatenated, copying them is cheaper than the rope.
+    private static final int MIN_LENGTH = 64;
+
+    private final StringBuilder buffer;
+    private final int length;
+    private String flat = null;
+
+    private Rope(final StringBuilder buffer, final int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    public static boolean isString(final Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    public static Object concat(final CharSequence left, final CharSequence right) {
+        if (left instanceof final Rope rope) {
+            return rope.append(right.toString());
+        }
+
+        final int length = left.length() + right.length();
+        if (length < MIN_LENGTH) {
+            return left.toString() + right;
+        }
+        return new Rope(new StringBuilder(length * 2).append(left).append(right), length);
+    }
+
+    public static Object flatten(final Object value) {
+        return (value instanceof final Rope rope) ? rope.toString() : value;
+    }
+
+    public static void flatten(final Object[] values) {
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] instanceof final Rope rope) {
+                values[i] = rope.toString();
+            }
+        }
+    }
+
+    private Rope append(final String tail) {
+        if (buffer.length() == length) {
+            buffer.append(tail);
+            return new Rope(buffer, buffer.length());
+        }
+
+        // Something else was already appended after this one, so it gets a buffer of its own.
+        final StringBuilder copy = new StringBuilder((length + tail.length()) * 2).append(buffer, 0, length).append(tail);
+        return new Rope(copy, copy.length());
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return buffer.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            flat = buffer.substring(0, length);
+        }
+        return flat;
+    }
+}
@@ -0,0 +1,46 @@
+package Runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The layout of an instance's fields: which index of its value array each one lives at. Adding a field moves an
+// instance to the child shape for that name, so instances whose fields were set in the same order (everything one
+// `anew` builds) share a shape. Each struct has its own root, which makes a shape imply the struct as well.
+public final class Shape {
+    private final Map<String, Integer> indices;
+    private Map<String, Shape> transitions;
+
+    public Shape() {
+        this(Map.of());
+    }
+
+    private Shape(final Map<String, Integer> indices) {
+        this.indices = indices;
+    }
+
+    public int size() {
+        return indices.size();
+    }
+
+    // The field's index, -1 when instances of this shape don't have it.
+    public int indexOf(final String name) {
+        final Integer index = indices.get(name);
+        return (index != null) ? index : -1;
+    }
+
+    public Shape with(final String name) {
+        if (transitions == null) {
+            transitions = new HashMap<>();
+        }
+
+        Shape child = transitions.get(name);
+        if (child == null) {
+            final Map<String, Integer> childIndices = new HashMap<>(indices);
+            childIndices.put(name, indices.size());
+
+            child = new Shape(childIndices);
+            transitions.put(name, child);
+        }
+        return child;
+    }
+}
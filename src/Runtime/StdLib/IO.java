@@ -4,13 +4,13 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.List;
 import java.util.Scanner;
 import java.util.function.Consumer;
 
 import Parsing.Stmt;
 import Runtime.Interpreter;
 import Runtime.AstreCallable;
+import Runtime.Output;
 
 public class IO {
     public final static Consumer<Interpreter> builder = IO::build;
@@ -23,11 +23,11 @@ public class IO {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                for (int i = 0; i < args.size(); ++i) {
-                    System.out.print(args.get(i));
-                    if (i != args.size()-1) {
-                        System.out.print(" ");
+            public Object call(Interpreter interpreter, Object[] args) {
+                for (int i = 0; i < args.length; ++i) {
+                    Output.print(args[i]);
+                    if (i != args.length-1) {
+                        Output.print(" ");
                     }
                 }
 
@@ -41,19 +41,26 @@ public class IO {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                for (int i = 0; i < args.size(); ++i) {
-                    System.out.print(args.get(i));
-                    if (i != args.size()-1) {
-                        System.out.print(" ");
+            public Object call(Interpreter interpreter, Object[] args) {
+                for (int i = 0; i < args.length; ++i) {
+                    Output.print(args[i]);
+                    if (i != args.length-1) {
+                        Output.print(" ");
                     }
                 }
 
-                System.out.println();
+                Output.println();
 
                 return null;
             }
         });
+        astre.environment.define(null, Stmt.Modifier.Constant, "flush", new AstreCallable() {
+            @Override
+            public Object call(Interpreter interpreter, Object[] args) {
+                Output.flush();
+                return null;
+            }
+        });
         astre.environment.define(null, Stmt.Modifier.Constant, "write_err", new AstreCallable() {
             @Override
             public int arity() {
@@ -61,10 +68,11 @@ public class IO {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                for (int i = 0; i < args.size(); ++i) {
-                    System.err.print(args.get(i));
-                    if (i != args.size()-1) {
+            public Object call(Interpreter interpreter, Object[] args) {
+                Output.flush();
+                for (int i = 0; i < args.length; ++i) {
+                    System.err.print(Output.text(args[i]));
+                    if (i != args.length-1) {
                         System.err.print(" ");
                     }
                 }
@@ -79,10 +87,11 @@ public class IO {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                for (int i = 0; i < args.size(); ++i) {
-                    System.err.print(args.get(i));
-                    if (i != args.size()-1) {
+            public Object call(Interpreter interpreter, Object[] args) {
+                Output.flush();
+                for (int i = 0; i < args.length; ++i) {
+                    System.err.print(Output.text(args[i]));
+                    if (i != args.length-1) {
                         System.err.print(" ");
                     }
                 }
@@ -99,14 +108,15 @@ public class IO {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                for (int i = 0; i < args.size(); ++i) {
-                    System.out.print(args.get(i));
-                    if (i != args.size()-1) {
-                        System.out.print(" ");
+            public Object call(Interpreter interpreter, Object[] args) {
+                for (int i = 0; i < args.length; ++i) {
+                    Output.print(args[i]);
+                    if (i != args.length-1) {
+                        Output.print(" ");
                     }
                 }
 
+                Output.flush();
                 final String o = new Scanner(System.in).nextLine();
                 return o;
             }
@@ -118,14 +128,15 @@ public class IO {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                for (int i = 0; i < args.size(); ++i) {
-                    System.out.print(args.get(i));
-                    if (i != args.size()-1) {
-                        System.out.print(" ");
+            public Object call(Interpreter interpreter, Object[] args) {
+                for (int i = 0; i < args.length; ++i) {
+                    Output.print(args[i]);
+                    if (i != args.length-1) {
+                        Output.print(" ");
                     }
                 }
 
+                Output.flush();
                 final double o = new Scanner(System.in).nextDouble();
                 return o;
             }
@@ -137,9 +148,9 @@ public class IO {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
+            public Object call(Interpreter interpreter, Object[] args) {
                 try {
-                    BufferedReader bufferedReader = new BufferedReader(new FileReader((String)args.get(0)));
+                    BufferedReader bufferedReader = new BufferedReader(new FileReader((String)args[0]));
                     int charCount = 0;
 
                     while (bufferedReader.read() != -1) {
@@ -148,7 +159,7 @@ public class IO {
 
                     bufferedReader.close();
 
-                    return (double)charCount;
+                    return (long)charCount;
                 } catch (final IOException ioe) {
                     ioe.printStackTrace();
                     System.exit(1);
@@ -163,10 +174,10 @@ public class IO {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
+            public Object call(Interpreter interpreter, Object[] args) {
                 try {
-                    RandomAccessFile file  = new RandomAccessFile((String)args.get(0), "r");
-                    file.seek((int)args.get(1));
+                    RandomAccessFile file  = new RandomAccessFile((String)args[0], "r");
+                    file.seek(((Number)args[1]).longValue());
 
                     int charCode = file.read();
 
@@ -174,7 +185,7 @@ public class IO {
                         char character = (char)charCode;
                         return Character.toString(character);
                     } else {
-                        System.out.println("Index: " + args.get(1) + " out of range in file: " + args.get(0) + ".");
+                        Output.println("Index: " + Output.text(args[1]) + " out of range in file: " + args[0] + ".");
                         System.exit(1);
                     }
                 } catch (final IOException ioe) {
@@ -3,6 +3,7 @@ package Runtime.StdLib;
 import java.util.List;
 import java.util.function.Consumer;
 
+import ASTAnalysis.Resolver;
 import LexicalAnalysis.Scanner;
 import LexicalAnalysis.Token;
 import Parsing.Parser;
@@ -240,6 +241,7 @@ public class ListLib {
         final Parser parser = new Parser(tokens);
         final List<Stmt> parsed = parser.parse();
 
+        new Resolver(environment).resolve(parsed);
         environment.interpret(parsed);
     }
 }
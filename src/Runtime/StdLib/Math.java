@@ -1,6 +1,5 @@
 package Runtime.StdLib;
 
-import java.util.List;
 import java.util.function.Consumer;
 
 import Parsing.Stmt;
@@ -13,20 +12,20 @@ public class Math {
     private static void build(final Interpreter environment) {
         environment.environment.define(null, Stmt.Modifier.Constant, "sin", new AstreCallable() {
             @Override public int arity() { return 1; }
-            @Override public Object call(Interpreter ignore, List<Object> args) {
-                return java.lang.Math.sin((double)args.get(0));
+            @Override public Object call(Interpreter ignore, Object[] args) {
+                return java.lang.Math.sin(((Number)args[0]).doubleValue());
             }
         });
         environment.environment.define(null, Stmt.Modifier.Constant, "cos", new AstreCallable() {
             @Override public int arity() { return 1; }
-            @Override public Object call(Interpreter ignore, List<Object> args) {
-                return java.lang.Math.cos((double)args.get(0));
+            @Override public Object call(Interpreter ignore, Object[] args) {
+                return java.lang.Math.cos(((Number)args[0]).doubleValue());
             }
         });
         environment.environment.define(null, Stmt.Modifier.Constant, "tan", new AstreCallable() {
             @Override public int arity() { return 1; }
-            @Override public Object call(Interpreter ignore, List<Object> args) {
-                return java.lang.Math.tan((double)args.get(0));
+            @Override public Object call(Interpreter ignore, Object[] args) {
+                return java.lang.Math.tan(((Number)args[0]).doubleValue());
             }
         });
     }
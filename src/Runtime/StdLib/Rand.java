@@ -1,6 +1,5 @@
 package Runtime.StdLib;
 
-import java.util.List;
 import java.util.Random;
 import java.util.function.Consumer;
 
@@ -20,7 +19,7 @@ public class Rand {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
+            public Object call(Interpreter interpreter, Object[] args) {
                 return random.nextDouble();
             }
         });
@@ -31,13 +30,13 @@ public class Rand {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                final double min = (double)args.get(0);
-                final double max = (double)args.get(1);
+            public Object call(Interpreter interpreter, Object[] args) {
+                final double min = ((Number)args[0]).doubleValue();
+                final double max = ((Number)args[1]).doubleValue();
 
                 final double result = random.nextDouble(min, max);
 
-                return (int)result;
+                return (long)result;
             }
         });
         interpreter.environment.define(null, Stmt.Modifier.Constant, "uniform", new AstreCallable() {
@@ -47,9 +46,9 @@ public class Rand {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
-                final double min = (double)args.get(0);
-                final double max = (double)args.get(1);
+            public Object call(Interpreter interpreter, Object[] args) {
+                final double min = ((Number)args[0]).doubleValue();
+                final double max = ((Number)args[1]).doubleValue();
 
                 final double result = random.nextDouble(min, max);
 
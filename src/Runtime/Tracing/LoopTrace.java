@@ -0,0 +1,55 @@
+package Runtime.Tracing;
+
+import Parsing.*;
+import Runtime.*;
+import Runtime.Closures.ExprCode;
+import Runtime.Closures.StmtCode;
+
+// Per-loop state for the tracing tier. The interpreter counts back-edges here, records one iteration once the loop is
+// hot and from then on runs `body`, `condition` and `increment`, the loop compiled along the path that was recorded.
+// Too many side exits throw the compiled code away so the loop can be recorded again with what it has seen since.
+public final class LoopTrace {
+    public static boolean enabled = true;
+
+    private static final int THRESHOLD = 200, MAX_SIDE_EXITS = 1000, MAX_RECORDINGS = 3;
+
+    private final Stmt loopBody, loopIncrement;
+    private final Expr loopCondition;
+    private final TraceRecorder recorder = new TraceRecorder();
+    private int backEdges = 0, sideExits = 0, recordings = 0;
+
+    // Null until the loop has been compiled, and again after it's been thrown away.
+    public StmtCode body = null, increment = null;
+    public ExprCode condition = null;
+
+    public LoopTrace(final Stmt body, final Expr condition, final Stmt increment) {
+        this.loopBody = body;
+        this.loopCondition = condition;
+        this.loopIncrement = increment;
+    }
+
+    // Returns the recorder on the back-edge that makes the loop hot, when the next iteration should be recorded.
+    public TraceRecorder backEdge() {
+        if (!enabled || recordings == MAX_RECORDINGS || ++backEdges != THRESHOLD) {
+            return null;
+        }
+        return recorder;
+    }
+
+    public void compile(final Interpreter interpreter) {
+        ++recordings;
+
+        final TraceCompiler compiler = new TraceCompiler(interpreter, this, recorder);
+        condition = (loopCondition != null) ? compiler.expression(loopCondition) : null;
+        increment = (loopIncrement != null) ? compiler.statement(loopIncrement) : null;
+        body = compiler.statement(loopBody);
+    }
+
+    void sideExit() {
+        if (++sideExits == MAX_SIDE_EXITS) {
+            body = increment = null;
+            condition = null;
+            sideExits = backEdges = 0;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package Runtime.Tracing;
+
+import java.util.function.DoubleBinaryOperator;
+
+import LexicalAnalysis.*;
+import Parsing.*;
+import Parsing.Expr.*;
+import Parsing.Stmt.*;
+import Runtime.*;
+import Runtime.Closures.ClosureCompiler;
+import Runtime.Closures.ExprCode;
+import Runtime.Closures.StmtCode;
+import Runtime.Tracing.TraceRecorder.Operands;
+
+// Compiles a hot loop along the path its recorded iteration took. Every specialization is guarded; a guard that fails
+// is a side exit, which finishes just that node the generic way (an untaken branch is run by the interpreter) and
+// carries on with the trace, so nothing is ever run twice. Nodes the recording never reached compile as usual.
+final class TraceCompiler extends ClosureCompiler {
+    private interface DoubleComparison {
+        boolean test(double left, double right);
+    }
+
+    // Boxes its result, which may have left the integers.
+    private interface LongOperation {
+        Object apply(long left, long right);
+    }
+
+    private final LoopTrace trace;
+    private final TraceRecorder recorder;
+
+    TraceCompiler(final Interpreter interpreter, final LoopTrace trace, final TraceRecorder recorder) {
+        super(interpreter);
+        this.trace = trace;
+        this.recorder = recorder;
+    }
+
+    StmtCode statement(final Stmt stmt) {
+        return compile(stmt);
+    }
+
+    ExprCode expression(final Expr expr) {
+        return compile(expr);
+    }
+
+    @Override
+    public ExprCode visitBinaryExpr(Binary expr) {
+        final Object seen = recorder.observed(expr);
+        final Token operator = expr.operator;
+
+        if (seen == Operands.STRINGS && operator.type == TokenType.Plus) {
+            final ExprCode left = compile(expr.left), right = compile(expr.right);
+            return environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (Rope.isString(l) && Rope.isString(r)) {
+                    return Rope.concat((CharSequence) l, (CharSequence) r);
+                }
+                trace.sideExit();
+                return Operators.binary(operator, l, r);
+            };
+        } else if (seen != Operands.NUMBERS && seen != Operands.INTEGERS || unboxes(expr.left, expr.right)) {
+            // Arithmetic on literals and locals is already unboxed.
+            return super.visitBinaryExpr(expr);
+        } else if (seen == Operands.INTEGERS) {
+            return integers(expr);
+        }
+
+        final DoubleBinaryOperator arithmetic = switch (operator.type) {
+            case Plus -> (l, r) -> l + r;
+            case Minus -> (l, r) -> l - r;
+            case Star -> (l, r) -> l * r;
+            case Slash -> (l, r) -> l / r;
+            case Modulo -> (l, r) -> l % r;
+            case Power -> Math::pow;
+            default -> null;
+        };
+        final DoubleComparison comparison = switch (operator.type) {
+            case Less -> (l, r) -> l < r;
+            case LessEqual -> (l, r) -> l <= r;
+            case Greater -> (l, r) -> l > r;
+            case GreaterEqual -> (l, r) -> l >= r;
+            default -> null;
+        };
+        if (arithmetic == null && comparison == null) {
+            return super.visitBinaryExpr(expr);
+        }
+
+        // At least one side has to be a double, two integers stay integers.
+        final ExprCode left = compile(expr.left), right = compile(expr.right);
+        if (arithmetic != null) {
+            return environment -> {
+                final Object l = left.evaluate(environment), r = right.evaluate(environment);
+                if (isDoubles(l, r)) {
+                    return arithmetic.applyAsDouble(Operators.toDouble(l), Operators.toDouble(r));
+                }
+                trace.sideExit();
+                return Operators.binary(operator, l, r);
+            };
+        }
+
+        return environment -> {
+            final Object l = left.evaluate(environment), r = right.evaluate(environment);
+            if (isDoubles(l, r)) {
+                return comparison.test(Operators.toDouble(l), Operators.toDouble(r));
+            }
+            trace.sideExit();
+            return Operators.binary(operator, l, r);
+        };
+    }
+
+    private static boolean isDoubles(final Object left, final Object right) {
+        return (left instanceof Double && Operators.isNumber(right)) || (right instanceof Double && left instanceof Long);
+    }
+
+    private ExprCode integers(final Binary expr) {
+        final Token operator = expr.operator;
+        final LongOperation operation = switch (operator.type) {
+            case Plus -> Operators::add;
+            case Minus -> Operators::subtract;
+            case Star -> Operators::multiply;
+            case Slash -> Operators::divide;
+            case Modulo -> Operators::modulo;
+            case Power -> Operators::power;
+            case Less -> (l, r) -> l < r;
+            case LessEqual -> (l, r) -> l <= r;
+            case Greater -> (l, r) -> l > r;
+            case GreaterEqual -> (l, r) -> l >= r;
+            default -> null;
+        };
+        if (operation == null) {
+            return super.visitBinaryExpr(expr);
+        }
+
+        final ExprCode left = compile(expr.left), right = compile(expr.right);
+        return environment -> {
+            final Object l = left.evaluate(environment), r = right.evaluate(environment);
+            if (l instanceof final Long ll && r instanceof final Long rl) {
+                return operation.apply(ll, rl);
+            }
+            trace.sideExit();
+            return Operators.binary(operator, l, r);
+        };
+    }
+
+    // A call site that always called the same thing skips the callable and arity checks while it still does.
+    @Override
+    public ExprCode visitCallExpr(Call expr) {
+        final Object seen = recorder.observed(expr);
+        if (seen == null || seen == TraceRecorder.MIXED || expr.callee instanceof Get || expr.tailCall) {
+            return super.visitCallExpr(expr);
+        }
+
+        final ExprCode callee = compile(expr.callee);
+        final ExprCode[] arguments = new ExprCode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+
+        return environment -> {
+            final Object function = callee.evaluate(environment);
+            final Object[] args = Interpreter.arguments(function, arguments.length);
+            for (int i = 0; i < arguments.length; ++i) {
+                args[i] = arguments[i].evaluate(environment);
+            }
+
+            final Environment previous = interpreter.environment;
+            try {
+                interpreter.environment = environment;
+                if (function == seen || (seen instanceof final FunctionStmt declaration && function instanceof final AstreFunction astreFunction && astreFunction.declaredBy(declaration))) {
+                    if (!(function instanceof AstreFunction)) {
+                        Rope.flatten(args);
+                    }
+                    return ((AstreCallable) function).call(interpreter, args);
+                }
+                trace.sideExit();
+                return interpreter.call(expr, function, args);
+            } finally {
+                interpreter.environment = previous;
+            }
+        };
+    }
+
+    // Only the branch the recording took is compiled; the other one is left to the interpreter.
+    @Override
+    public StmtCode visitIfStmt(If stmt) {
+        if (!(recorder.observed(stmt) instanceof final Boolean taken)) {
+            return super.visitIfStmt(stmt);
+        }
+
+        final ExprCode condition = compile(stmt.condition);
+        final Stmt onTrace = taken ? stmt.thenBranch : stmt.elseBranch;
+        final Stmt offTrace = taken ? stmt.elseBranch : stmt.thenBranch;
+        final StmtCode branch = (onTrace != null) ? compile(onTrace) : environment -> StmtCode.NORMAL;
+
+        return environment -> {
+            if (Operators.isTruthy(condition.evaluate(environment)) == taken) {
+                return branch.execute(environment);
+            }
+            trace.sideExit();
+            return interpreter.executeOffTrace(offTrace, environment);
+        };
+    }
+}
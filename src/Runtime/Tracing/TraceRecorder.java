@@ -0,0 +1,41 @@
+package Runtime.Tracing;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import Runtime.Operators;
+import Runtime.Rope;
+
+// What the interpreter saw while running a recorded iteration of a hot loop: which way each `if` went, what each call
+// site called and what each binary operator was given. A node that saw more than one thing is `MIXED`.
+public final class TraceRecorder {
+    public enum Operands {
+        INTEGERS, NUMBERS, STRINGS, OTHER;
+
+        public static Operands of(final Object left, final Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return INTEGERS;
+            } else if (Operators.isNumber(left) && Operators.isNumber(right)) {
+                return NUMBERS;
+            } else if (Rope.isString(left) && Rope.isString(right)) {
+                return STRINGS;
+            }
+            return OTHER;
+        }
+    }
+
+    static final Object MIXED = new Object();
+
+    private final Map<Object, Object> observations = new IdentityHashMap<>();
+
+    public void observe(final Object node, final Object seen) {
+        final Object previous = observations.putIfAbsent(node, seen);
+        if (previous != null && previous != seen && !previous.equals(seen)) {
+            observations.put(node, MIXED);
+        }
+    }
+
+    Object observed(final Object node) {
+        return observations.get(node);
+    }
+}